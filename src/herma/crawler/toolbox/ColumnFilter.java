@@ -0,0 +1,224 @@
+/* This Source Code Form is subject to the terms of the hermA Licence.
+ * If a copy of the licence was not distributed with this file, You have
+ * received this Source Code Form in a manner that does not comply with
+ * the terms of the licence.
+ */
+package herma.crawler.toolbox;
+
+import java.nio.file.Path;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.function.Predicate;
+
+import herma.crawler.toolbox.common.ColumnScanner;
+import herma.crawler.toolbox.common.CrawlIndex;
+import herma.crawler.toolbox.common.StringPool;
+
+/**
+ * Decides about the deletion of lines from a metadata file
+ * by whether the value of one column is in a given set of values.
+ * <p>
+ * Besides testing lines scanned by a {@link ColumnScanner} (as a {@link Predicate}),
+ * a {@link ColumnFilter} can test lines in their UTF-8 encoding
+ * without decoding them: it only locates the bytes of its column
+ * between the tabs and looks them up in a {@link StringPool}.
+ * {@link FromMetadataFileDeletion#deleteFromMetaFile(Path, Predicate)}
+ * therefore copies the remaining lines of a metadata file byte for byte
+ * if it is given a {@link ColumnFilter}.
+ * </p>
+ * <p>
+ * Lines without the column count as lines with a value not in the set.
+ * </p>
+ * <p>
+ * The methods of this class may be called by several threads.
+ * </p>
+ */
+public class ColumnFilter implements Predicate<ColumnScanner> {
+	
+	private final int pColumn;
+	private final StringPool pValues;
+	// the IDs of the values in pValues, or null for all
+	private final BitSet pValueIds;
+	private final boolean pDeleteValues;
+	
+	private ColumnFilter(final int column, final StringPool values, final BitSet valueIds, final boolean deleteValues) {
+		pColumn = column;
+		pValues = values;
+		pValueIds = valueIds;
+		pDeleteValues = deleteValues;
+	}
+	
+	private static StringPool toPool(final Collection<String> values) {
+		final StringPool result = new StringPool();
+		for (final String value : values)
+			result.intern(value);
+		return result;
+	}
+	
+	/**
+	 * Creates a {@link ColumnFilter} deleting the lines
+	 * with one of some values in a column.
+	 * 
+	 * @param column
+	 * the index of the column (starting with 0)
+	 * 
+	 * @param values
+	 * the values; copied;
+	 * not {@code null}
+	 * 
+	 * @return
+	 * the {@link ColumnFilter};
+	 * not {@code null}
+	 */
+	public static ColumnFilter deleting(final int column, final Collection<String> values) {
+		return new ColumnFilter(column, toPool(values), null, true);
+	}
+	
+	/**
+	 * Creates a {@link ColumnFilter} deleting the lines
+	 * without one of some values in a column.
+	 * 
+	 * @param column
+	 * the index of the column (starting with 0)
+	 * 
+	 * @param values
+	 * the values; copied;
+	 * not {@code null}
+	 * 
+	 * @return
+	 * the {@link ColumnFilter};
+	 * not {@code null}
+	 */
+	public static ColumnFilter retaining(final int column, final Collection<String> values) {
+		return new ColumnFilter(column, toPool(values), null, false);
+	}
+	
+	/**
+	 * Creates a {@link ColumnFilter} deleting the lines
+	 * with one of some filenames of a {@link CrawlIndex} in a column.
+	 * 
+	 * @param column
+	 * the index of the column (starting with 0)
+	 * 
+	 * @param index
+	 * the {@link CrawlIndex}, which must not load further files;
+	 * not {@code null}
+	 * 
+	 * @param nameIds
+	 * the IDs of the filenames; copied;
+	 * not {@code null}
+	 * 
+	 * @return
+	 * the {@link ColumnFilter};
+	 * not {@code null}
+	 */
+	public static ColumnFilter deleting(final int column, final CrawlIndex index, final BitSet nameIds) {
+		return new ColumnFilter(column, index.getNames(), (BitSet) nameIds.clone(), true);
+	}
+	
+	/**
+	 * Creates a {@link ColumnFilter} deleting the lines
+	 * without one of some filenames of a {@link CrawlIndex} in a column.
+	 * 
+	 * @param column
+	 * the index of the column (starting with 0)
+	 * 
+	 * @param index
+	 * the {@link CrawlIndex}, which must not load further files;
+	 * not {@code null}
+	 * 
+	 * @param nameIds
+	 * the IDs of the filenames; copied;
+	 * not {@code null}
+	 * 
+	 * @return
+	 * the {@link ColumnFilter};
+	 * not {@code null}
+	 */
+	public static ColumnFilter retaining(final int column, final CrawlIndex index, final BitSet nameIds) {
+		return new ColumnFilter(column, index.getNames(), (BitSet) nameIds.clone(), false);
+	}
+	
+	/**
+	 * Decides whether to delete a line.
+	 * 
+	 * @param columns
+	 * a {@link ColumnScanner} which has scanned the line;
+	 * not {@code null}
+	 * 
+	 * @return
+	 * {@code true} if the line is to be deleted,
+	 * {@code false} otherwise
+	 */
+	@Override
+	public boolean test(final ColumnScanner columns) {
+		final boolean contained = pColumn < columns.getColumnCount() && isValue(pValues.find(columns.getColumn(pColumn)));
+		return contained == pDeleteValues;
+	}
+	
+	/**
+	 * Decides whether to delete a line given in UTF-8.
+	 * 
+	 * @param bytes
+	 * a byte array containing the line;
+	 * not {@code null}
+	 * 
+	 * @param start
+	 * the index of the first byte of the line
+	 * 
+	 * @param end
+	 * the index after the last byte of the line,
+	 * excluding the line break
+	 * 
+	 * @return
+	 * {@code true} if the line is to be deleted,
+	 * {@code false} otherwise
+	 */
+	public boolean test(final byte[] bytes, final int start, final int end) {
+		// tabs and line breaks cannot be part of multi-byte characters in UTF-8
+		int columnStart = start;
+		for (int i = 0; i < pColumn; i++) {
+			final int tab = indexOfTab(bytes, columnStart, end);
+			if (tab < 0)
+				return !pDeleteValues;
+			columnStart = tab + 1;
+		}
+		int columnEnd = indexOfTab(bytes, columnStart, end);
+		if (columnEnd < 0) {
+			columnEnd = end;
+			if (columnEnd > columnStart && bytes[columnEnd - 1] == '\r')
+				columnEnd--;
+		}
+		final boolean contained = isValue(pValues.find(bytes, columnStart, columnEnd - columnStart));
+		return contained == pDeleteValues;
+	}
+	
+	/**
+	 * Decides whether to delete a line with a value given by its ID,
+	 * such as a line of a {@link CrawlIndex} for a {@link ColumnFilter}
+	 * created from that index.
+	 * 
+	 * @param id
+	 * the ID of the value in the {@link StringPool} of the {@link ColumnFilter},
+	 * or -1 if the line has no such column
+	 * 
+	 * @return
+	 * {@code true} if the line is to be deleted,
+	 * {@code false} otherwise
+	 */
+	public boolean testId(final int id) {
+		return isValue(id) == pDeleteValues;
+	}
+	
+	private boolean isValue(final int id) {
+		return id >= 0 && (pValueIds == null || pValueIds.get(id));
+	}
+	
+	private static int indexOfTab(final byte[] bytes, final int start, final int end) {
+		for (int i = start; i < end; i++)
+			if (bytes[i] == '\t')
+				return i;
+		return -1;
+	}
+	
+}
@@ -0,0 +1,199 @@
+/* This Source Code Form is subject to the terms of the hermA Licence.
+ * If a copy of the licence was not distributed with this file, You have
+ * received this Source Code Form in a manner that does not comply with
+ * the terms of the licence.
+ */
+package herma.crawler.toolbox;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import herma.crawler.toolbox.common.PackedDirectories;
+import herma.crawler.toolbox.common.WorkerPool;
+
+/**
+ * The files in corresponding directories of one or more
+ * web crawler output directories (for example, the
+ * {@link herma.crawler.toolbox.common.CommonPaths#TEXT_TOKENS_DIR}
+ * sub-directories of their text directories),
+ * together with the names by which tools refer to them in their output.
+ * <p>
+ * With a single directory, files are named by their filenames,
+ * as usual in the web crawler output. With more than one directory,
+ * filenames need not be unique, so files are named by their
+ * absolute paths instead.
+ * </p>
+ * <p>
+ * Packed directories (see {@link PackedDirectories}) are read from their
+ * pack files; the files in them are named as if they were not packed.
+ * </p>
+ */
+public class CrawlFiles implements AutoCloseable {
+	
+	/**
+	 * Processes a file.
+	 */
+	@FunctionalInterface
+	public interface FileTask {
+		
+		/**
+		 * Processes a file.
+		 * 
+		 * @param file
+		 * (a {@link Path} locating) the file;
+		 * not {@code null}
+		 * 
+		 * @throws IOException
+		 * if an I/O error occurs
+		 */
+		void process(Path file) throws IOException;
+		
+	}
+	
+	private final List<Path> pLocations;
+	private final List<Path> pDirectories;
+	private final PackedDirectories pPacks;
+	private final boolean pQualifiedNames;
+	
+	/**
+	 * Creates a {@link CrawlFiles} object,
+	 * opening the pack files of packed directories.
+	 * 
+	 * @param directories
+	 * the absolute, normalized {@link Path}s of the directories;
+	 * not {@code null}, not empty
+	 * 
+	 * @throws IOException
+	 * if an I/O error occurs
+	 */
+	public CrawlFiles(final List<Path> directories) throws IOException {
+		pLocations = Collections.unmodifiableList(new ArrayList<>(directories));
+		pPacks = new PackedDirectories();
+		final ArrayList<Path> opened = new ArrayList<>(directories.size());
+		for (final Path directory : directories)
+			opened.add(pPacks.open(directory));
+		pDirectories = Collections.unmodifiableList(opened);
+		pQualifiedNames = (directories.size() > 1);
+	}
+	
+	/**
+	 * Returns the directories as opened by
+	 * {@link PackedDirectories#open(Path)}.
+	 * 
+	 * @return
+	 * an unmodifiable {@link List} of the directories,
+	 * in the order given;
+	 * not {@code null}
+	 */
+	public List<Path> getDirectories() {
+		return pDirectories;
+	}
+	
+	/**
+	 * Returns the name by which to refer to a file in the output.
+	 * 
+	 * @param file
+	 * (a {@link Path} locating) a file in one of the directories;
+	 * not {@code null}
+	 * 
+	 * @return
+	 * the filename if there is only one directory,
+	 * the absolute path of the file otherwise;
+	 * not {@code null}
+	 */
+	public String nameOf(final Path file) {
+		final String filename = file.getFileName().toString();
+		if (!pQualifiedNames)
+			return filename;
+		final int index = pDirectories.indexOf(file.getParent());
+		return pLocations.get(index).resolve(filename).toString();
+	}
+	
+	/**
+	 * Locates a file by the name returned by {@link #nameOf(Path)}.
+	 * 
+	 * @param name
+	 * the name of the file;
+	 * not {@code null}
+	 * 
+	 * @return
+	 * (a {@link Path} locating) the file;
+	 * not {@code null}
+	 */
+	public Path fileNamed(final String name) {
+		if (!pQualifiedNames)
+			return pDirectories.get(0).resolve(name);
+		// resolving an absolute path yields that path
+		final Path location = pLocations.get(0).resolve(name);
+		final int index = pLocations.indexOf(location.getParent());
+		return pDirectories.get(index).resolve(location.getFileName().toString());
+	}
+	
+	/**
+	 * Calls a {@link FileTask} for every file in all directories.
+	 * 
+	 * @param threads
+	 * the number of threads calling the {@link FileTask}
+	 * 
+	 * @param task
+	 * the {@link FileTask};
+	 * not {@code null}
+	 * 
+	 * @throws IOException
+	 * if an I/O error occurs
+	 */
+	public void forEach(final int threads, final FileTask task) throws IOException {
+		try (final WorkerPool workers = new WorkerPool(threads, 4 * threads)) {
+			for (final Path directory : pDirectories)
+				submitAll(directory, workers, task);
+			workers.finish();
+		}
+	}
+	
+	/**
+	 * Calls a {@link FileTask} for every file in one of the directories.
+	 * 
+	 * @param directoryIndex
+	 * the index of the directory in {@link #getDirectories()}
+	 * 
+	 * @param threads
+	 * the number of threads calling the {@link FileTask}
+	 * 
+	 * @param task
+	 * the {@link FileTask};
+	 * not {@code null}
+	 * 
+	 * @throws IOException
+	 * if an I/O error occurs
+	 */
+	public void forEachIn(final int directoryIndex, final int threads, final FileTask task) throws IOException {
+		try (final WorkerPool workers = new WorkerPool(threads, 4 * threads)) {
+			submitAll(pDirectories.get(directoryIndex), workers, task);
+			workers.finish();
+		}
+	}
+	
+	/**
+	 * Closes the pack files of packed directories.
+	 * 
+	 * @throws IOException
+	 * if an I/O error occurs
+	 */
+	@Override
+	public void close() throws IOException {
+		pPacks.close();
+	}
+	
+	private static void submitAll(final Path directory, final WorkerPool workers, final FileTask task) throws IOException {
+		try (final DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+			for (final Path file : files)
+				workers.submit(() -> task.process(file));
+		}
+	}
+	
+}
@@ -12,40 +12,67 @@ import java.nio.file.FileSystem;
 import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.HashSet;
 import java.util.function.Consumer;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
+import herma.crawler.toolbox.common.ColumnScanner;
 import herma.crawler.toolbox.common.Common;
 import herma.crawler.toolbox.common.CommonPaths;
+import herma.crawler.toolbox.common.CrawlIndex;
+import herma.crawler.toolbox.common.FileDeleter;
+import herma.crawler.toolbox.common.MetadataCache;
+import herma.crawler.toolbox.common.PackedDirectories;
 
 public class Delete {
 	
+	private static final String THREADS_OPTION = "threads";
+	
 	public static void main(final String[] args) {
+		int threads = 1;
+		// arguments not named like the option are the positional arguments
+		final ArrayList<String> positionalArgs = new ArrayList<>(args.length);
+		for (final String arg : args) {
+			if (!THREADS_OPTION.equals(Common.optionName(arg))) {
+				positionalArgs.add(arg);
+				continue;
+			}
+			threads = Common.parsePositiveInt(Common.optionValue(arg));
+			if (threads < 0) {
+				System.err.print("Invalid option: ");
+				System.err.println(arg);
+				System.exit(1);
+				return;
+			}
+		}
+		
 		final boolean mock;
-		switch (args.length) {
+		switch (positionalArgs.size()) {
 			case 3:
 				mock = false;
 				break;
 			case 4:
-				if ("mock".equals(args[3])) {
+				if ("mock".equals(positionalArgs.get(3))) {
 					mock = true;
 					break;
 				}
 			default:
 				System.err.println("Invalid command line arguments.");
-				System.err.println("Expecting three or four arguments:");
+				System.err.println("Expecting three to five arguments:");
 				System.err.println("crawler output directory");
 				System.err.println("file with names of files to delete");
 				System.err.println("input column (\"" + CommonPaths.ORIGINAL_DIR + "\", \"" + CommonPaths.TEXT_ORIGINAL_DIR + "\", \"" + CommonPaths.TEXT_TOKENS_DIR + "\", \"" + CommonPaths.TEXT_POS_LEMMA_DIR + "\", or \"" + CommonPaths.TEXT_PARSE_DIR + "\")");
 				System.err.println("optional: \"mock\" to not actually delete files");
+				System.err.println("optional: \"" + THREADS_OPTION + "=N\" to delete files with N threads");
 				System.exit(1);
 				return;
 		}
 		
-		final int inputColumn = loadInputColumn(args[2]);
+		final int inputColumn = loadInputColumn(positionalArgs.get(2));
 		if (inputColumn < 0) {
 			System.exit(1);
 			return;
@@ -53,19 +80,28 @@ public class Delete {
 		
 		final FileSystem fs = FileSystems.getDefault();
 		
-		final Path crawlDir = Common.loadPath(fs, args[0]);
-		final Path inputFile = Common.loadPath(fs, args[1]);
+		final Path crawlDir = Common.loadPath(fs, positionalArgs.get(0));
+		final Path inputFile = Common.loadPath(fs, positionalArgs.get(1));
 		
 		final Path filesFile = crawlDir.resolve(CommonPaths.FILES_FILE);
 		
-		final HashSet<String> notDeletedFilenames;
+		final ArrayList<String> notDeletedFilenames = new ArrayList<>();
+		final boolean allFilesDeleted;
 		
 		try {
 			final HashSet<String> filenamesToDelete = loadFilenamesToDelete(inputFile);
-			notDeletedFilenames = new HashSet<>(filenamesToDelete);
 			
+			final CrawlIndex index = MetadataCache.load(crawlDir);
+			final BitSet nameIdsToDelete = new BitSet();
+			for (final String filename : filenamesToDelete) {
+				final int nameId = index.findName(filename);
+				if (nameId >= 0)
+					nameIdsToDelete.set(nameId);
+			}
+			
+			final BitSet deletedNameIds;
 			if (mock) {
-				final Deleter deleter = new Deleter(crawlDir, filenamesToDelete, inputColumn, path -> mockDelete(crawlDir, path));
+				final Deleter deleter = new Deleter(crawlDir, index, nameIdsToDelete, inputColumn, path -> mockDelete(crawlDir, path));
 				
 				System.out.println("Mocking the deletion of files and entries in " + CommonPaths.FILES_FILE);
 				FromMetadataFileDeletion.mockDeleteFromMetaFile(filesFile, deleter);
@@ -75,25 +111,55 @@ public class Delete {
 				System.out.println();
 				
 				System.out.println("Mocking the deletion of corresponding metadata:");
-				mockDeleteFromMetadataFile(crawlDir, CommonPaths.URLS_FILE, deleter.getDeletedOriginalFilenames(), 3);
-				mockDeleteFromMetadataFile(crawlDir, CommonPaths.MATCHES_FILE, deleter.getDeletedPosLemmaFilenames(), 0);
+				mockDeleteFromMetadataFile(index, crawlDir, CommonPaths.URLS_FILE, deleter.getDeletedOriginalFilenames(), 3);
+				mockDeleteFromMetadataFile(index, crawlDir, CommonPaths.MATCHES_FILE, deleter.getDeletedPosLemmaFilenames(), 0);
 				
-				notDeletedFilenames.removeAll(deleter.getDeletedFilenames());
+				deletedNameIds = deleter.getDeletedFilenames();
+				allFilesDeleted = true;
 			} else {
-				final Deleter deleter = new Deleter(crawlDir, filenamesToDelete, inputColumn, Delete::delete);
+				// the files are only deleted when the metadata no longer refers to them
+				final ArrayList<Path> filesToDelete = new ArrayList<>();
 				
-				System.out.println("Deleting files and entries in " + CommonPaths.FILES_FILE);
-				FromMetadataFileDeletion.deleteFromMetaFile(filesFile, deleter);
-				deleter.finishDeletion();
-				System.out.println("Deleted.");
+				// the metadata files are only replaced when all of them have been rewritten
+				try (final MetadataTransaction transaction = new MetadataTransaction(2)) {
+					final Deleter deleter = new Deleter(crawlDir, index, nameIdsToDelete, inputColumn, filesToDelete::add);
+					
+					System.out.println("Deleting entries in " + CommonPaths.FILES_FILE);
+					transaction.stage(filesFile, deleter);
+					deleter.finishDeletion();
+					System.out.println("Deleted.");
+					
+					System.out.println();
+					
+					System.out.println("Deleting corresponding metadata:");
+					final ColumnFilter urlsDeletion = deleteFromMetadataFile(transaction, index, crawlDir, CommonPaths.URLS_FILE, deleter.getDeletedOriginalFilenames(), 3);
+					final ColumnFilter matchesDeletion = deleteFromMetadataFile(transaction, index, crawlDir, CommonPaths.MATCHES_FILE, deleter.getDeletedPosLemmaFilenames(), 0);
+					transaction.commit();
+					
+					System.out.println(CommonPaths.METADATA_CACHE_FILE);
+					index.deleteFileLines(deleter.getDeletedLines());
+					index.deleteUrlLines(urlsDeletion::testId);
+					index.deleteMatchLines(matchesDeletion::testId);
+					MetadataCache.save(crawlDir, index);
+					
+					deletedNameIds = deleter.getDeletedFilenames();
+				}
 				
 				System.out.println();
 				
-				System.out.println("Deleting corresponding metadata:");
-				deleteFromMetadataFile(crawlDir, CommonPaths.URLS_FILE, deleter.getDeletedOriginalFilenames(), 3);
-				deleteFromMetadataFile(crawlDir, CommonPaths.MATCHES_FILE, deleter.getDeletedPosLemmaFilenames(), 0);
-				
-				notDeletedFilenames.removeAll(deleter.getDeletedFilenames());
+				System.out.println("Deleting files");
+				// deletions from packed directories are written when the pack files are closed
+				try (final PackedDirectories packs = new PackedDirectories(); final FileDeleter fileDeleter = new FileDeleter(threads, packs)) {
+					for (final Path file : filesToDelete)
+						fileDeleter.delete(file);
+					allFilesDeleted = fileDeleter.finish();
+				}
+			}
+			
+			for (final String filename : filenamesToDelete) {
+				final int nameId = index.findName(filename);
+				if (nameId < 0 || !deletedNameIds.get(nameId))
+					notDeletedFilenames.add(filename);
 			}
 		} catch (final IOException e) {
 			throw new UncheckedIOException(e);
@@ -102,27 +168,32 @@ public class Delete {
 		System.out.println();
 		System.out.println("Done.");
 		
-		if (notDeletedFilenames.isEmpty())
-			return;
+		if (!notDeletedFilenames.isEmpty()) {
+			System.out.println();
+			System.out.println("For some files no matching metadata could be found; they were not deleted:");
+			for (final String filename : notDeletedFilenames)
+				System.out.println(filename);
+		}
 		
-		System.out.println();
-		System.out.println("For some files no matching metadata could be found; they were not deleted:");
-		for (final String filename : notDeletedFilenames)
-			System.out.println(filename);
+		if (!allFilesDeleted) {
+			System.exit(3);
+			return;
+		}
 	}
 	
+	// returns the column in the CrawlIndex, not in the files file
 	private static int loadInputColumn(final String arg) {
 		switch (arg) {
 			case CommonPaths.ORIGINAL_DIR:
-				return 0;
+				return CrawlIndex.ORIGINAL;
 			case CommonPaths.TEXT_ORIGINAL_DIR:
-				return 2;
+				return CrawlIndex.TEXT_ORIGINAL;
 			case CommonPaths.TEXT_TOKENS_DIR:
-				return 3;
+				return CrawlIndex.TEXT_TOKENS;
 			case CommonPaths.TEXT_POS_LEMMA_DIR:
-				return 4;
+				return CrawlIndex.TEXT_POS_LEMMA;
 			case CommonPaths.TEXT_PARSE_DIR:
-				return 5;
+				return CrawlIndex.TEXT_PARSE;
 			default:
 				System.err.print("Invalid input column: ");
 				System.err.println(arg);
@@ -136,22 +207,16 @@ public class Delete {
 		}
 	}
 	
-	private static void mockDeleteFromMetadataFile(final Path crawlDir, final String metadataFilename, final HashSet<String> deletedFilenames, final int column) throws IOException {
+	private static void mockDeleteFromMetadataFile(final CrawlIndex index, final Path crawlDir, final String metadataFilename, final BitSet deletedFilenames, final int column) throws IOException {
 		System.out.println(metadataFilename);
-		FromMetadataFileDeletion.mockDeleteFromMetaFile(crawlDir.resolve(metadataFilename), fields -> deletedFilenames.contains(fields[column]));
+		FromMetadataFileDeletion.mockDeleteFromMetaFile(crawlDir.resolve(metadataFilename), ColumnFilter.deleting(column, index, deletedFilenames));
 	}
 	
-	private static void deleteFromMetadataFile(final Path crawlDir, final String metadataFilename, final HashSet<String> deletedFilenames, final int column) throws IOException {
+	private static ColumnFilter deleteFromMetadataFile(final MetadataTransaction transaction, final CrawlIndex index, final Path crawlDir, final String metadataFilename, final BitSet deletedFilenames, final int column) throws IOException {
 		System.out.println(metadataFilename);
-		FromMetadataFileDeletion.deleteFromMetaFile(crawlDir.resolve(metadataFilename), fields -> deletedFilenames.contains(fields[column]));
-	}
-	
-	private static void delete(final Path file) {
-		try {
-			Files.deleteIfExists(file);
-		} catch (final IOException e) {
-			throw new UncheckedIOException(e);
-		}
+		final ColumnFilter result = ColumnFilter.deleting(column, index, deletedFilenames);
+		transaction.stageInBackground(crawlDir.resolve(metadataFilename), result);
+		return result;
 	}
 	
 	private static void mockDelete(final Path crawlDir, final Path file) {
@@ -159,7 +224,8 @@ public class Delete {
 		System.out.println(crawlDir.relativize(file).toString());
 	}
 	
-	private static class Deleter implements Predicate<String[]> {
+	// the lines of the files file are tested in the order in which they have been loaded into the index
+	private static class Deleter implements Predicate<ColumnScanner> {
 		
 		private final Path pOriginalDir;
 		private final Path pTextDir;
@@ -169,17 +235,21 @@ public class Delete {
 		private final Path pTextParseDir;
 		private final Path pTextParserInputDir;
 		
-		private final HashSet<String> pFilenamesToDelete;
+		private final CrawlIndex pIndex;
+		private final BitSet pFilenamesToDelete;
 		private final int pInputColumn;
 		
 		private final Consumer<? super Path> pDeletionOperation;
 		
-		private final HashSet<String> pDeletedFilenames;
-		private final HashSet<String> pOriginalFilenamesToDelete;
-		private final HashSet<String> pOriginalFilenamesToNotDelete;
-		private final HashSet<String> pDeletedPosLemmaFilenames;
+		private final BitSet pDeletedFilenames;
+		private final BitSet pOriginalFilenamesToDelete;
+		private final BitSet pOriginalFilenamesToNotDelete;
+		private final BitSet pDeletedPosLemmaFilenames;
+		
+		private int pLine;
+		private final BitSet pDeletedLines;
 		
-		public Deleter(final Path crawlDir, final HashSet<String> filenamesToDelete, final int inputColumn, final Consumer<? super Path> deletionOperation) {
+		public Deleter(final Path crawlDir, final CrawlIndex index, final BitSet filenamesToDelete, final int inputColumn, final Consumer<? super Path> deletionOperation) {
 			pOriginalDir = crawlDir.resolve(CommonPaths.ORIGINAL_DIR);
 			pTextDir = crawlDir.resolve(CommonPaths.TEXT_DIR);
 			pTextOriginalDir = pTextDir.resolve(CommonPaths.TEXT_ORIGINAL_DIR);
@@ -188,61 +258,71 @@ public class Delete {
 			pTextParseDir = pTextDir.resolve(CommonPaths.TEXT_PARSE_DIR);
 			pTextParserInputDir = pTextDir.resolve(CommonPaths.TEXT_PARSER_INPUT_DIR);
 			
+			pIndex = index;
 			pFilenamesToDelete = filenamesToDelete;
 			pInputColumn = inputColumn;
 			
 			pDeletionOperation = deletionOperation;
 			
-			pDeletedFilenames = new HashSet<>();
-			pDeletedPosLemmaFilenames = new HashSet<>();
-			pOriginalFilenamesToDelete = new HashSet<>();
-			pOriginalFilenamesToNotDelete = new HashSet<>();
+			pDeletedFilenames = new BitSet();
+			pDeletedPosLemmaFilenames = new BitSet();
+			pOriginalFilenamesToDelete = new BitSet();
+			pOriginalFilenamesToNotDelete = new BitSet();
+			
+			pLine = 0;
+			pDeletedLines = new BitSet();
 		}
 		
 		@Override
-		public boolean test(final String[] parts) {
-			final String filename = parts[pInputColumn];
-			final String originalFileName = parts[0];
+		public boolean test(final ColumnScanner columns) {
+			final int line = pLine++;
+			final int filenameId = pIndex.getNameOfFileLine(line, pInputColumn);
+			final int originalFilenameId = pIndex.getNameOfFileLine(line, CrawlIndex.ORIGINAL);
 			
-			if (pFilenamesToDelete.contains(filename)) {
-				final String posLemmaFileName = parts[4];
-				final String parseFilename = parts[5];
+			if (filenameId >= 0 && pFilenamesToDelete.get(filenameId)) {
+				final String posLemmaFileName = columns.getColumn(4);
+				final String parseFilename = columns.getColumn(5);
 				
-				pDeletionOperation.accept(pTextOriginalDir.resolve(parts[2]));
-				pDeletionOperation.accept(pTextTokensDir.resolve(parts[3]));
+				pDeletionOperation.accept(pTextOriginalDir.resolve(columns.getColumn(2)));
+				pDeletionOperation.accept(pTextTokensDir.resolve(columns.getColumn(3)));
 				pDeletionOperation.accept(pTextPosLemmaDir.resolve(posLemmaFileName));
 				pDeletionOperation.accept(pTextParseDir.resolve(parseFilename));
 				pDeletionOperation.accept(pTextParserInputDir.resolve(parseFilename));
 				
-				pDeletedFilenames.add(filename);
-				pDeletedPosLemmaFilenames.add(posLemmaFileName);
-				pOriginalFilenamesToDelete.add(originalFileName);
+				pDeletedFilenames.set(filenameId);
+				pDeletedPosLemmaFilenames.set(pIndex.getNameOfFileLine(line, CrawlIndex.TEXT_POS_LEMMA));
+				pOriginalFilenamesToDelete.set(originalFilenameId);
+				pDeletedLines.set(line);
 				return true;
 			}
 			
-			pOriginalFilenamesToNotDelete.add(originalFileName);
+			pOriginalFilenamesToNotDelete.set(originalFilenameId);
 			return false;
 		}
 		
 		public void finishDeletion() {
-			pDeletedFilenames.removeAll(pOriginalFilenamesToNotDelete);
-			pOriginalFilenamesToDelete.removeAll(pOriginalFilenamesToNotDelete);
-			for (final String originalFileName : pOriginalFilenamesToDelete)
-				pDeletionOperation.accept(pOriginalDir.resolve(originalFileName));
+			pDeletedFilenames.andNot(pOriginalFilenamesToNotDelete);
+			pOriginalFilenamesToDelete.andNot(pOriginalFilenamesToNotDelete);
+			for (int nameId = pOriginalFilenamesToDelete.nextSetBit(0); nameId >= 0; nameId = pOriginalFilenamesToDelete.nextSetBit(nameId + 1))
+				pDeletionOperation.accept(pOriginalDir.resolve(pIndex.nameOf(nameId)));
 		}
 		
-		public HashSet<String> getDeletedFilenames() {
+		public BitSet getDeletedFilenames() {
 			return pDeletedFilenames;
 		}
 		
-		public HashSet<String> getDeletedOriginalFilenames() {
+		public BitSet getDeletedOriginalFilenames() {
 			return pOriginalFilenamesToDelete;
 		}
 		
-		public HashSet<String> getDeletedPosLemmaFilenames() {
+		public BitSet getDeletedPosLemmaFilenames() {
 			return pDeletedPosLemmaFilenames;
 		}
 		
+		public BitSet getDeletedLines() {
+			return pDeletedLines;
+		}
+		
 	}
 	
 }
@@ -7,81 +7,119 @@ package herma.crawler.toolbox;
 
 import java.io.IOException;
 import java.io.UncheckedIOException;
-import java.nio.charset.StandardCharsets;
-import java.nio.file.DirectoryStream;
 import java.nio.file.FileSystems;
-import java.nio.file.Files;
-import java.nio.file.LinkOption;
 import java.nio.file.Path;
-import java.util.HashSet;
+import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.function.Consumer;
 import java.util.function.Predicate;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
+import herma.crawler.toolbox.common.ColumnScanner;
 import herma.crawler.toolbox.common.Common;
 import herma.crawler.toolbox.common.CommonPaths;
+import herma.crawler.toolbox.common.CrawlIndex;
+import herma.crawler.toolbox.common.DirectorySnapshot;
+import herma.crawler.toolbox.common.FileDeleter;
+import herma.crawler.toolbox.common.MetadataCache;
+import herma.crawler.toolbox.common.PackedDirectories;
+import herma.crawler.toolbox.common.WorkerPool;
 
 public class DeleteOrphaned {
 	
+	// the index of the parser input directory in the directory snapshots,
+	// after the directories of the filename columns of files.txt
+	private static final int TEXT_PARSER_INPUT = CrawlIndex.NAME_COLUMNS;
+	
+	private static final String THREADS_OPTION = "threads";
+	
 	public static void main(final String[] args) {
+		int threads = 1;
+		// arguments not named like the option are the positional arguments
+		final ArrayList<String> positionalArgs = new ArrayList<>(args.length);
+		for (final String arg : args) {
+			if (!THREADS_OPTION.equals(Common.optionName(arg))) {
+				positionalArgs.add(arg);
+				continue;
+			}
+			threads = Common.parsePositiveInt(Common.optionValue(arg));
+			if (threads < 0) {
+				System.err.print("Invalid option: ");
+				System.err.println(arg);
+				System.exit(1);
+				return;
+			}
+		}
+		
 		final boolean mock;
-		switch (args.length) {
+		switch (positionalArgs.size()) {
 			case 1:
 				mock = false;
 				break;
 			case 2:
-				if ("mock".equals(args[1])) {
+				if ("mock".equals(positionalArgs.get(1))) {
 					mock = true;
 					break;
 				}
 			default:
 				System.err.println("Invalid command line arguments.");
-				System.err.println("Expecting one or two arguments:");
+				System.err.println("Expecting one to three arguments:");
 				System.err.println("crawler output directory");
 				System.err.println("optional: \"mock\" to not actually delete files");
+				System.err.println("optional: \"" + THREADS_OPTION + "=N\" to delete files with N threads");
 				System.exit(1);
 				return;
 		}
 		
-		final Path crawlDir = Common.loadPath(FileSystems.getDefault(), args[0]);
+		final Path crawlDir = Common.loadPath(FileSystems.getDefault(), positionalArgs.get(0));
 		
-		final Path originalDir = crawlDir.resolve(CommonPaths.ORIGINAL_DIR);
 		final Path textDir = crawlDir.resolve(CommonPaths.TEXT_DIR);
-		final Path textPosLemmaDir = textDir.resolve(CommonPaths.TEXT_POS_LEMMA_DIR);
-		final Path urlsFile = crawlDir.resolve(CommonPaths.URLS_FILE);
 		final Path filesFile = crawlDir.resolve(CommonPaths.FILES_FILE);
-		final Path matchesFile = crawlDir.resolve(CommonPaths.MATCHES_FILE);
+		final Path[] directories = {
+				crawlDir.resolve(CommonPaths.ORIGINAL_DIR),
+				textDir.resolve(CommonPaths.TEXT_ORIGINAL_DIR),
+				textDir.resolve(CommonPaths.TEXT_TOKENS_DIR),
+				textDir.resolve(CommonPaths.TEXT_POS_LEMMA_DIR),
+				textDir.resolve(CommonPaths.TEXT_PARSE_DIR),
+				textDir.resolve(CommonPaths.TEXT_PARSER_INPUT_DIR)
+			};
 		
-		try {
-			System.out.println("Reading " + CommonPaths.URLS_FILE);
-			final HashSet<String> originalFilenamesWithUrlMetadata = collectOriginalFilenamesWithUrlMetadata(urlsFile, originalDir);
-			System.out.println("Reading " + CommonPaths.MATCHES_FILE);
-			final HashSet<String> posLemmaFilenamesWithMatchMetadata = collectPosLemmaFilenamesWithMatchMetadata(matchesFile, textPosLemmaDir);
+		final boolean allFilesDeleted;
+		
+		// deletions from packed directories are written when the pack files are closed
+		try (final PackedDirectories packs = new PackedDirectories()) {
+			System.out.println("Reading metadata");
+			final CrawlIndex index = MetadataCache.load(crawlDir);
+			System.out.println("Listing directories");
+			final DirectorySnapshot[] snapshots = takeSnapshots(packs, index, directories);
+			final BitSet originalFilenamesWithUrlMetadata = index.getUrlNames();
+			originalFilenamesWithUrlMetadata.and(snapshots[CrawlIndex.ORIGINAL].getNameIds());
+			final BitSet posLemmaFilenamesWithMatchMetadata = index.getMatchNames();
 			
 			System.out.println();
 			
 			if (mock) {
-				final Deleter deleter = new Deleter(textDir, textPosLemmaDir, originalFilenamesWithUrlMetadata, posLemmaFilenamesWithMatchMetadata);
+				final Deleter deleter = new Deleter(index, snapshots, originalFilenamesWithUrlMetadata, posLemmaFilenamesWithMatchMetadata);
 				
 				System.out.println("Mocking the deletion of entries in " + CommonPaths.FILES_FILE);
 				FromMetadataFileDeletion.mockDeleteFromMetaFile(filesFile, deleter);
 				System.out.println("Deleted (mock).");
 				
-				final HashSet<String> originalFilesWithMetadata = deleter.getOriginalFilesWithMetadata();
-				final HashSet<String> posLemmaFilesWithMetadata = deleter.getPosLemmaFilesWithMetadata();
+				final BitSet originalFilesWithMetadata = deleter.getOriginalFilesWithMetadata();
+				final BitSet posLemmaFilesWithMetadata = deleter.getPosLemmaFilesWithMetadata();
 				
 				System.out.println();
 				
 				System.out.println("Mocking the deletion from other metadata:");
-				mockRetainReferencedMetadata(crawlDir, CommonPaths.URLS_FILE, originalFilesWithMetadata, 3);
-				mockRetainReferencedMetadata(crawlDir, CommonPaths.MATCHES_FILE, posLemmaFilesWithMetadata, 0);
+				mockRetainReferencedMetadata(index, crawlDir, CommonPaths.URLS_FILE, originalFilesWithMetadata, 3);
+				mockRetainReferencedMetadata(index, crawlDir, CommonPaths.MATCHES_FILE, posLemmaFilesWithMetadata, 0);
 				
 				System.out.println();
 				
 				System.out.println("Mocking the deletion of files without metadata:");
 				deleteFilesWithoutMetadata(
-						crawlDir,
+						index,
+						directories,
+						snapshots,
 						originalFilesWithMetadata,
 						deleter.getExtractedTextFilesWithMetadata(),
 						deleter.getTokensFilesWithMetadata(),
@@ -89,34 +127,50 @@ public class DeleteOrphaned {
 						deleter.getParseFilesWithMetadata(),
 						path -> mockDelete(crawlDir, path)
 					);
+				allFilesDeleted = true;
 			} else {
-				final Deleter deleter = new Deleter(textDir, textPosLemmaDir, originalFilenamesWithUrlMetadata, posLemmaFilenamesWithMatchMetadata);
+				final Deleter deleter = new Deleter(index, snapshots, originalFilenamesWithUrlMetadata, posLemmaFilenamesWithMatchMetadata);
 				
-				System.out.println("Deleting entries in " + CommonPaths.FILES_FILE);
-				FromMetadataFileDeletion.deleteFromMetaFile(filesFile, deleter);
-				System.out.println("Deleted.");
+				final BitSet originalFilesWithMetadata = deleter.getOriginalFilesWithMetadata();
+				final BitSet posLemmaFilesWithMetadata = deleter.getPosLemmaFilesWithMetadata();
 				
-				final HashSet<String> originalFilesWithMetadata = deleter.getOriginalFilesWithMetadata();
-				final HashSet<String> posLemmaFilesWithMetadata = deleter.getPosLemmaFilesWithMetadata();
-				
-				System.out.println();
-				
-				System.out.println("Deleting from other metadata:");
-				retainReferencedMetadata(crawlDir, CommonPaths.URLS_FILE, originalFilesWithMetadata, 3);
-				retainReferencedMetadata(crawlDir, CommonPaths.MATCHES_FILE, posLemmaFilesWithMetadata, 0);
+				// the metadata files are only replaced when all of them have been rewritten
+				try (final MetadataTransaction transaction = new MetadataTransaction(2)) {
+					System.out.println("Deleting entries in " + CommonPaths.FILES_FILE);
+					transaction.stage(filesFile, deleter);
+					System.out.println("Deleted.");
+					
+					System.out.println();
+					
+					System.out.println("Deleting from other metadata:");
+					final ColumnFilter urlsDeletion = retainReferencedMetadata(transaction, index, crawlDir, CommonPaths.URLS_FILE, originalFilesWithMetadata, 3);
+					final ColumnFilter matchesDeletion = retainReferencedMetadata(transaction, index, crawlDir, CommonPaths.MATCHES_FILE, posLemmaFilesWithMetadata, 0);
+					transaction.commit();
+					
+					System.out.println(CommonPaths.METADATA_CACHE_FILE);
+					index.deleteFileLines(deleter.getDeletedLines());
+					index.deleteUrlLines(urlsDeletion::testId);
+					index.deleteMatchLines(matchesDeletion::testId);
+					MetadataCache.save(crawlDir, index);
+				}
 				
 				System.out.println();
 				
 				System.out.println("Deleting files without metadata");
-				deleteFilesWithoutMetadata(
-						crawlDir,
-						originalFilesWithMetadata,
-						deleter.getExtractedTextFilesWithMetadata(),
-						deleter.getTokensFilesWithMetadata(),
-						posLemmaFilesWithMetadata,
-						deleter.getParseFilesWithMetadata(),
-						DeleteOrphaned::delete
-					);
+				try (final FileDeleter fileDeleter = new FileDeleter(threads, packs)) {
+					deleteFilesWithoutMetadata(
+							index,
+							directories,
+							snapshots,
+							originalFilesWithMetadata,
+							deleter.getExtractedTextFilesWithMetadata(),
+							deleter.getTokensFilesWithMetadata(),
+							posLemmaFilesWithMetadata,
+							deleter.getParseFilesWithMetadata(),
+							file -> delete(fileDeleter, file)
+						);
+					allFilesDeleted = fileDeleter.finish();
+				}
 			}
 		} catch (final IOException e) {
 			throw new UncheckedIOException(e);
@@ -124,55 +178,64 @@ public class DeleteOrphaned {
 		
 		System.out.println();
 		System.out.println("Done.");
-	}
-	
-	private static HashSet<String> collectOriginalFilenamesWithUrlMetadata(final Path urlsFile, final Path originalDir) throws IOException {
-		try (final Stream<String> lines = Files.lines(urlsFile, StandardCharsets.UTF_8)) {
-			return Common.selectColumn(lines, 3)
-					.filter(fn -> Files.exists(originalDir.resolve(fn), LinkOption.NOFOLLOW_LINKS))
-					.collect(Collectors.toCollection(HashSet::new));
+		
+		if (!allFilesDeleted) {
+			System.exit(3);
+			return;
 		}
 	}
 	
-	private static HashSet<String> collectPosLemmaFilenamesWithMatchMetadata(final Path matchesFile, final Path posLemmaDir) throws IOException {
-		try (final Stream<String> lines = Files.lines(matchesFile, StandardCharsets.UTF_8)) {
-			return Common.selectColumn(lines, 0).collect(Collectors.toCollection(HashSet::new));
+	// lists the directories in parallel, in their packs where they are packed
+	private static DirectorySnapshot[] takeSnapshots(final PackedDirectories packs, final CrawlIndex index, final Path[] directories) throws IOException {
+		final Path[] openedDirectories = new Path[directories.length];
+		for (int i = 0; i < directories.length; i++)
+			openedDirectories[i] = packs.open(directories[i]);
+		
+		final DirectorySnapshot[] result = new DirectorySnapshot[directories.length];
+		try (final WorkerPool workers = new WorkerPool(directories.length, directories.length)) {
+			for (int i = 0; i < directories.length; i++) {
+				final int directory = i;
+				workers.submit(() -> result[directory] = DirectorySnapshot.list(openedDirectories[directory], index.getNames()));
+			}
+			workers.finish();
 		}
+		return result;
 	}
 	
-	private static void mockRetainReferencedMetadata(final Path crawlDir, final String metadataFilename, final HashSet<String> referencedFilenames, final int column) throws IOException {
+	private static void mockRetainReferencedMetadata(final CrawlIndex index, final Path crawlDir, final String metadataFilename, final BitSet referencedFilenames, final int column) throws IOException {
 		System.out.println(metadataFilename);
-		FromMetadataFileDeletion.mockDeleteFromMetaFile(crawlDir.resolve(metadataFilename), fields -> !referencedFilenames.contains(fields[column]));
+		FromMetadataFileDeletion.mockDeleteFromMetaFile(crawlDir.resolve(metadataFilename), ColumnFilter.retaining(column, index, referencedFilenames));
 	}
 	
-	private static void retainReferencedMetadata(final Path crawlDir, final String metadataFilename, final HashSet<String> referencedFilenames, final int column) throws IOException {
+	private static ColumnFilter retainReferencedMetadata(final MetadataTransaction transaction, final CrawlIndex index, final Path crawlDir, final String metadataFilename, final BitSet referencedFilenames, final int column) throws IOException {
 		System.out.println(metadataFilename);
-		FromMetadataFileDeletion.deleteFromMetaFile(crawlDir.resolve(metadataFilename), fields -> !referencedFilenames.contains(fields[column]));
+		final ColumnFilter result = ColumnFilter.retaining(column, index, referencedFilenames);
+		transaction.stageInBackground(crawlDir.resolve(metadataFilename), result);
+		return result;
 	}
 	
-	private static void deleteFilesWithoutMetadata(final Path crawlDir, final HashSet<String> originalFilesWithMetadata, final HashSet<String> extractedTextFilesWithMetadata, final HashSet<String> tokensFilesWithMetadata, final HashSet<String> posLemmaFilesWithMetadata, final HashSet<String> parseFilesWithMetadata, final Consumer<? super Path> deletionOperation) throws IOException {
-		final Path textDir = crawlDir.resolve(CommonPaths.TEXT_DIR);
-		processDirectory(crawlDir.resolve(CommonPaths.ORIGINAL_DIR), originalFilesWithMetadata, deletionOperation);
-		processDirectory(textDir.resolve(CommonPaths.TEXT_ORIGINAL_DIR), extractedTextFilesWithMetadata, deletionOperation);
-		processDirectory(textDir.resolve(CommonPaths.TEXT_TOKENS_DIR), tokensFilesWithMetadata, deletionOperation);
-		processDirectory(textDir.resolve(CommonPaths.TEXT_POS_LEMMA_DIR), posLemmaFilesWithMetadata, deletionOperation);
-		processDirectory(textDir.resolve(CommonPaths.TEXT_PARSE_DIR), parseFilesWithMetadata, deletionOperation);
-		processDirectory(textDir.resolve(CommonPaths.TEXT_PARSER_INPUT_DIR), parseFilesWithMetadata, deletionOperation);
+	private static void deleteFilesWithoutMetadata(final CrawlIndex index, final Path[] directories, final DirectorySnapshot[] snapshots, final BitSet originalFilesWithMetadata, final BitSet extractedTextFilesWithMetadata, final BitSet tokensFilesWithMetadata, final BitSet posLemmaFilesWithMetadata, final BitSet parseFilesWithMetadata, final Consumer<? super Path> deletionOperation) {
+		processDirectory(index, directories[CrawlIndex.ORIGINAL], snapshots[CrawlIndex.ORIGINAL], originalFilesWithMetadata, deletionOperation);
+		processDirectory(index, directories[CrawlIndex.TEXT_ORIGINAL], snapshots[CrawlIndex.TEXT_ORIGINAL], extractedTextFilesWithMetadata, deletionOperation);
+		processDirectory(index, directories[CrawlIndex.TEXT_TOKENS], snapshots[CrawlIndex.TEXT_TOKENS], tokensFilesWithMetadata, deletionOperation);
+		processDirectory(index, directories[CrawlIndex.TEXT_POS_LEMMA], snapshots[CrawlIndex.TEXT_POS_LEMMA], posLemmaFilesWithMetadata, deletionOperation);
+		processDirectory(index, directories[CrawlIndex.TEXT_PARSE], snapshots[CrawlIndex.TEXT_PARSE], parseFilesWithMetadata, deletionOperation);
+		processDirectory(index, directories[TEXT_PARSER_INPUT], snapshots[TEXT_PARSER_INPUT], parseFilesWithMetadata, deletionOperation);
 	}
 	
-	private static void processDirectory(final Path directory, final HashSet<String> filesWithMetadata, final Consumer<? super Path> deletionOperation) throws IOException {
-		try (final DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
-			for (final Path file : files) {
-				if (filesWithMetadata.contains(file.getFileName().toString()))
-					continue;
-				deletionOperation.accept(file);
-			}
-		}
+	// the deletion operation gets the path of the file as if its directory was not packed
+	private static void processDirectory(final CrawlIndex index, final Path directory, final DirectorySnapshot snapshot, final BitSet filesWithMetadata, final Consumer<? super Path> deletionOperation) {
+		final BitSet filesWithoutMetadata = snapshot.getNameIds();
+		filesWithoutMetadata.andNot(filesWithMetadata);
+		for (int nameId = filesWithoutMetadata.nextSetBit(0); nameId >= 0; nameId = filesWithoutMetadata.nextSetBit(nameId + 1))
+			deletionOperation.accept(directory.resolve(index.nameOf(nameId)));
+		for (final String filename : snapshot.getOtherNames())
+			deletionOperation.accept(directory.resolve(filename));
 	}
 	
-	private static void delete(final Path file) {
+	private static void delete(final FileDeleter fileDeleter, final Path file) {
 		try {
-			Files.deleteIfExists(file);
+			fileDeleter.delete(file);
 		} catch (final IOException e) {
 			throw new UncheckedIOException(e);
 		}
@@ -183,100 +246,99 @@ public class DeleteOrphaned {
 		System.out.println(crawlDir.relativize(file).toString());
 	}
 	
-	private static class Deleter implements Predicate<String[]> {
+	// the lines of files.txt are tested in the order in which they have been loaded into the index
+	private static class Deleter implements Predicate<ColumnScanner> {
+		
+		private final CrawlIndex pIndex;
+		private final DirectorySnapshot[] pSnapshots;
 		
-		private final Path pTextDir;
-		private final Path pTextOriginalDir;
-		private final Path pTextTokensDir;
-		private final Path pTextPosLemmaDir;
-		private final Path pTextParseDir;
+		private final BitSet pOriginalFilenamesWithUrlMetadata;
+		private final BitSet pPosLemmaFilenamesWithMatchMetadata;
 		
-		private final HashSet<String> pOriginalFilenamesWithUrlMetadata;
-		private final HashSet<String> pPosLemmaFilenamesWithMatchMetadata;
+		private final BitSet pOriginalFilesWithMetadata;
+		private final BitSet pExtractedTextFilesWithMetadata;
+		private final BitSet pTokensFilesWithMetadata;
+		private final BitSet pPosLemmaFilesWithMetadata;
+		private final BitSet pParseFilesWithMetadata;
 		
-		private final HashSet<String> pOriginalFilesWithMetadata;
-		private final HashSet<String> pExtractedTextFilesWithMetadata;
-		private final HashSet<String> pTokensFilesWithMetadata;
-		private final HashSet<String> pPosLemmaFilesWithMetadata;
-		private final HashSet<String> pParseFilesWithMetadata;
+		private int pLine;
+		private final BitSet pDeletedLines;
 		
-		public Deleter(final Path textDir, final Path textPosLemmaDir, final HashSet<String> originalFilenamesWithUrlMetadata, final HashSet<String> posLemmaFilenamesWithMatchMetadata) {
-			pTextDir = textDir;
-			pTextOriginalDir = pTextDir.resolve(CommonPaths.TEXT_ORIGINAL_DIR);
-			pTextTokensDir = pTextDir.resolve(CommonPaths.TEXT_TOKENS_DIR);
-			pTextPosLemmaDir = textPosLemmaDir;
-			pTextParseDir = pTextDir.resolve(CommonPaths.TEXT_PARSE_DIR);
+		public Deleter(final CrawlIndex index, final DirectorySnapshot[] snapshots, final BitSet originalFilenamesWithUrlMetadata, final BitSet posLemmaFilenamesWithMatchMetadata) {
+			pIndex = index;
+			pSnapshots = snapshots;
 			
 			pOriginalFilenamesWithUrlMetadata = originalFilenamesWithUrlMetadata;
 			pPosLemmaFilenamesWithMatchMetadata = posLemmaFilenamesWithMatchMetadata;
 			
-			pOriginalFilesWithMetadata = new HashSet<>();
-			pExtractedTextFilesWithMetadata = new HashSet<>();
-			pTokensFilesWithMetadata = new HashSet<>();
-			pPosLemmaFilesWithMetadata = new HashSet<>();
-			pParseFilesWithMetadata = new HashSet<>();
+			pOriginalFilesWithMetadata = new BitSet();
+			pExtractedTextFilesWithMetadata = new BitSet();
+			pTokensFilesWithMetadata = new BitSet();
+			pPosLemmaFilesWithMetadata = new BitSet();
+			pParseFilesWithMetadata = new BitSet();
+			
+			pLine = 0;
+			pDeletedLines = new BitSet();
 		}
 		
 		@Override
-		public boolean test(final String[] parts) {
-			final String originalFileName = parts[0];
-			final String extractedTextFileName = parts[2];
-			final String tokensFileName = parts[3];
-			final String posLemmaFileName = parts[4];
-			final String parseFilename = parts[5];
+		public boolean test(final ColumnScanner columns) {
+			final int line = pLine++;
+			final int originalId = pIndex.getNameOfFileLine(line, CrawlIndex.ORIGINAL);
+			final int extractedTextId = pIndex.getNameOfFileLine(line, CrawlIndex.TEXT_ORIGINAL);
+			final int tokensId = pIndex.getNameOfFileLine(line, CrawlIndex.TEXT_TOKENS);
+			final int posLemmaId = pIndex.getNameOfFileLine(line, CrawlIndex.TEXT_POS_LEMMA);
+			final int parseId = pIndex.getNameOfFileLine(line, CrawlIndex.TEXT_PARSE);
 			
-			if (isConsistent(originalFileName, extractedTextFileName, tokensFileName, posLemmaFileName, parseFilename)) {
-				pOriginalFilesWithMetadata.add(originalFileName);
-				pExtractedTextFilesWithMetadata.add(extractedTextFileName);
-				pTokensFilesWithMetadata.add(tokensFileName);
-				pPosLemmaFilesWithMetadata.add(posLemmaFileName);
-				pParseFilesWithMetadata.add(parseFilename);
+			if (isConsistent(originalId, extractedTextId, tokensId, posLemmaId, parseId)) {
+				pOriginalFilesWithMetadata.set(originalId);
+				pExtractedTextFilesWithMetadata.set(extractedTextId);
+				pTokensFilesWithMetadata.set(tokensId);
+				pPosLemmaFilesWithMetadata.set(posLemmaId);
+				pParseFilesWithMetadata.set(parseId);
 				
 				return false;
 			}
 			
+			pDeletedLines.set(line);
 			return true;
 		}
 		
-		private boolean isConsistent(final String originalFileName, final String extractedTextFileName, final String tokensFileName, final String posLemmaFileName, final String parseFilename) {
-			return pOriginalFilenamesWithUrlMetadata.contains(originalFileName) &&
-					pPosLemmaFilenamesWithMatchMetadata.contains(posLemmaFileName) &&
-					allFilesExist(
-							pTextOriginalDir.resolve(extractedTextFileName),
-							pTextTokensDir.resolve(tokensFileName),
-							pTextPosLemmaDir.resolve(posLemmaFileName),
-							pTextParseDir.resolve(parseFilename)
-						);
-		}
-		
-		private static boolean allFilesExist(final Path extractedTextFile, final Path tokensFile, final Path posLemmaFile, final Path parseFile) {
+		// a missing column (ID -1) is not contained in any snapshot
+		private boolean isConsistent(final int originalId, final int extractedTextId, final int tokensId, final int posLemmaId, final int parseId) {
 			return
-					Files.exists(extractedTextFile, LinkOption.NOFOLLOW_LINKS) &&
-					Files.exists(tokensFile, LinkOption.NOFOLLOW_LINKS) &&
-					Files.exists(posLemmaFile, LinkOption.NOFOLLOW_LINKS) &&
-					Files.exists(parseFile, LinkOption.NOFOLLOW_LINKS);
+					pSnapshots[CrawlIndex.TEXT_ORIGINAL].contains(extractedTextId) &&
+					pSnapshots[CrawlIndex.TEXT_TOKENS].contains(tokensId) &&
+					pSnapshots[CrawlIndex.TEXT_POS_LEMMA].contains(posLemmaId) &&
+					pSnapshots[CrawlIndex.TEXT_PARSE].contains(parseId) &&
+					pOriginalFilenamesWithUrlMetadata.get(originalId) &&
+					pPosLemmaFilenamesWithMatchMetadata.get(posLemmaId);
 		}
 		
-		public HashSet<String> getOriginalFilesWithMetadata() {
+		public BitSet getOriginalFilesWithMetadata() {
 			return pOriginalFilesWithMetadata;
 		}
 		
-		public HashSet<String> getExtractedTextFilesWithMetadata() {
+		public BitSet getExtractedTextFilesWithMetadata() {
 			return pExtractedTextFilesWithMetadata;
 		}
 		
-		public HashSet<String> getTokensFilesWithMetadata() {
+		public BitSet getTokensFilesWithMetadata() {
 			return pTokensFilesWithMetadata;
 		}
 		
-		public HashSet<String> getPosLemmaFilesWithMetadata() {
+		public BitSet getPosLemmaFilesWithMetadata() {
 			return pPosLemmaFilesWithMetadata;
 		}
 		
-		public HashSet<String> getParseFilesWithMetadata() {
+		public BitSet getParseFilesWithMetadata() {
 			return pParseFilesWithMetadata;
 		}
 		
+		public BitSet getDeletedLines() {
+			return pDeletedLines;
+		}
+		
 	}
 	
 }
@@ -0,0 +1,375 @@
+/* This Source Code Form is subject to the terms of the hermA Licence.
+ * If a copy of the licence was not distributed with this file, You have
+ * received this Source Code Form in a manner that does not comply with
+ * the terms of the licence.
+ */
+package herma.crawler.toolbox;
+
+import java.util.Arrays;
+
+import herma.crawler.toolbox.common.CrawlIndex;
+import herma.crawler.toolbox.common.StringPool;
+
+/**
+ * A compact table of the downloads (lines of
+ * {@link herma.crawler.toolbox.common.CommonPaths#FILES_FILE})
+ * of one or more web crawler output directories.
+ * <p>
+ * Downloads are identified by consecutive {@code int} indices
+ * (in the order of addition). For every download, the table stores
+ * the index of its crawler output directory, its URL and its five
+ * filenames in primitive arrays; the URLs and filenames are stored
+ * as IDs of {@link StringPool}s, so that every distinct string is
+ * stored once, however many downloads and columns share it.
+ * </p>
+ * <p>
+ * This class is not thread-safe.
+ * </p>
+ */
+public class DownloadTable {
+	
+	/**
+	 * The filename column for the
+	 * {@link herma.crawler.toolbox.common.CommonPaths#ORIGINAL_DIR}
+	 * directory.
+	 */
+	public static final int ORIGINAL = CrawlIndex.ORIGINAL;
+	
+	/**
+	 * The filename column for the
+	 * {@link herma.crawler.toolbox.common.CommonPaths#TEXT_ORIGINAL_DIR}
+	 * sub-directory of the text directory.
+	 */
+	public static final int TEXT_ORIGINAL = CrawlIndex.TEXT_ORIGINAL;
+	
+	/**
+	 * The filename column for the
+	 * {@link herma.crawler.toolbox.common.CommonPaths#TEXT_TOKENS_DIR}
+	 * sub-directory of the text directory.
+	 */
+	public static final int TEXT_TOKENS = CrawlIndex.TEXT_TOKENS;
+	
+	/**
+	 * The filename column for the
+	 * {@link herma.crawler.toolbox.common.CommonPaths#TEXT_POS_LEMMA_DIR}
+	 * sub-directory of the text directory.
+	 */
+	public static final int TEXT_POS_LEMMA = CrawlIndex.TEXT_POS_LEMMA;
+	
+	/**
+	 * The filename column for the
+	 * {@link herma.crawler.toolbox.common.CommonPaths#TEXT_PARSE_DIR}
+	 * (and {@link herma.crawler.toolbox.common.CommonPaths#TEXT_PARSER_INPUT_DIR})
+	 * sub-directory of the text directory.
+	 */
+	public static final int TEXT_PARSE = CrawlIndex.TEXT_PARSE;
+	
+	private static final int NAME_COLUMNS = CrawlIndex.NAME_COLUMNS;
+	
+	private final StringPool pUrls;
+	private final StringPool pNames;
+	
+	private int[] pCrawlDirs;
+	private int[] pUrlIds;
+	// NAME_COLUMNS consecutive entries per download
+	private int[] pNameIds;
+	private int pSize;
+	
+	/**
+	 * Creates an empty {@link DownloadTable}.
+	 */
+	public DownloadTable() {
+		this(new StringPool(), new StringPool());
+	}
+	
+	/**
+	 * Creates an empty {@link DownloadTable} which uses the IDs
+	 * of the URLs and filenames of a {@link CrawlIndex}, so that
+	 * downloads can be added by {@link #add(int, int, int...)}
+	 * without looking up their URLs and filenames again.
+	 * 
+	 * @param index
+	 * the {@link CrawlIndex}, which must not load further files;
+	 * not {@code null}
+	 */
+	public DownloadTable(final CrawlIndex index) {
+		this(index.getUrls(), index.getNames());
+	}
+	
+	private DownloadTable(final StringPool urls, final StringPool names) {
+		pUrls = urls;
+		pNames = names;
+		pCrawlDirs = new int[64];
+		pUrlIds = new int[64];
+		pNameIds = new int[64 * NAME_COLUMNS];
+		pSize = 0;
+	}
+	
+	/**
+	 * Returns the number of downloads.
+	 * 
+	 * @return
+	 * the number of downloads
+	 */
+	public int size() {
+		return pSize;
+	}
+	
+	/**
+	 * Returns the ID of a URL, adding the URL if necessary.
+	 * 
+	 * @param url
+	 * the URL;
+	 * not {@code null}
+	 * 
+	 * @return
+	 * the ID of the URL
+	 */
+	public int internUrl(final String url) {
+		return pUrls.intern(url);
+	}
+	
+	/**
+	 * Returns the ID of a filename, adding the filename if necessary.
+	 * All columns share the same IDs.
+	 * 
+	 * @param filename
+	 * the filename;
+	 * not {@code null}
+	 * 
+	 * @return
+	 * the ID of the filename
+	 */
+	public int internName(final String filename) {
+		return pNames.intern(filename);
+	}
+	
+	/**
+	 * Looks up the ID of a filename.
+	 * 
+	 * @param filename
+	 * the filename;
+	 * not {@code null}
+	 * 
+	 * @return
+	 * the ID of the filename,
+	 * or -1 if no download has a file of this name
+	 * (and the name has not been added by {@link #internName(String)})
+	 */
+	public int findName(final String filename) {
+		return pNames.find(filename);
+	}
+	
+	/**
+	 * Returns the number of distinct filenames.
+	 * 
+	 * @return
+	 * the number of filenames;
+	 * the IDs are 0 to this number minus 1
+	 */
+	public int nameCount() {
+		return pNames.size();
+	}
+	
+	/**
+	 * Returns a filename.
+	 * 
+	 * @param nameId
+	 * the ID of the filename
+	 * 
+	 * @return
+	 * the filename;
+	 * not {@code null}
+	 */
+	public String nameOf(final int nameId) {
+		return pNames.get(nameId);
+	}
+	
+	/**
+	 * Adds a download.
+	 * 
+	 * @param crawlDir
+	 * the index of the crawler output directory
+	 * 
+	 * @param urlId
+	 * the ID of the URL (see {@link #internUrl(String)})
+	 * 
+	 * @param nameIds
+	 * the IDs of the filenames (see {@link #internName(String)})
+	 * in the columns {@link #ORIGINAL}, {@link #TEXT_ORIGINAL},
+	 * {@link #TEXT_TOKENS}, {@link #TEXT_POS_LEMMA} and {@link #TEXT_PARSE};
+	 * not {@code null}
+	 * 
+	 * @return
+	 * the index of the download
+	 */
+	public int add(final int crawlDir, final int urlId, final int... nameIds) {
+		if (nameIds.length != NAME_COLUMNS)
+			throw new IllegalArgumentException("expecting " + NAME_COLUMNS + " filenames");
+		if (pSize == pCrawlDirs.length) {
+			final int capacity = 2 * pSize;
+			pCrawlDirs = Arrays.copyOf(pCrawlDirs, capacity);
+			pUrlIds = Arrays.copyOf(pUrlIds, capacity);
+			pNameIds = Arrays.copyOf(pNameIds, capacity * NAME_COLUMNS);
+		}
+		final int download = pSize++;
+		pCrawlDirs[download] = crawlDir;
+		pUrlIds[download] = urlId;
+		System.arraycopy(nameIds, 0, pNameIds, download * NAME_COLUMNS, NAME_COLUMNS);
+		return download;
+	}
+	
+	/**
+	 * Adds all downloads of another table, in their order.
+	 * Only the URLs and filenames of these downloads are
+	 * added to this table, every distinct string once.
+	 * 
+	 * @param other
+	 * the other table;
+	 * not {@code null}
+	 */
+	public void addAll(final DownloadTable other) {
+		final int[] urlIds = new int[other.pUrls.size()];
+		Arrays.fill(urlIds, -1);
+		final int[] nameIds = new int[other.pNames.size()];
+		Arrays.fill(nameIds, -1);
+		final int[] names = new int[NAME_COLUMNS];
+		for (int download = 0; download < other.pSize; download++) {
+			final int otherUrlId = other.pUrlIds[download];
+			if (urlIds[otherUrlId] < 0)
+				urlIds[otherUrlId] = internUrl(other.pUrls.get(otherUrlId));
+			for (int column = 0; column < NAME_COLUMNS; column++) {
+				final int otherNameId = other.getNameId(download, column);
+				if (nameIds[otherNameId] < 0)
+					nameIds[otherNameId] = internName(other.pNames.get(otherNameId));
+				names[column] = nameIds[otherNameId];
+			}
+			add(other.pCrawlDirs[download], urlIds[otherUrlId], names);
+		}
+	}
+	
+	/**
+	 * Returns the index of the crawler output directory of a download.
+	 * 
+	 * @param download
+	 * the index of the download
+	 * 
+	 * @return
+	 * the index of the crawler output directory
+	 */
+	public int getCrawlDir(final int download) {
+		return pCrawlDirs[download];
+	}
+	
+	/**
+	 * Returns the ID of a filename of a download.
+	 * 
+	 * @param download
+	 * the index of the download
+	 * 
+	 * @param column
+	 * the column, such as {@link #ORIGINAL}
+	 * 
+	 * @return
+	 * the ID of the filename
+	 */
+	public int getNameId(final int download, final int column) {
+		return pNameIds[download * NAME_COLUMNS + column];
+	}
+	
+	/**
+	 * Returns a filename of a download.
+	 * 
+	 * @param download
+	 * the index of the download
+	 * 
+	 * @param column
+	 * the column, such as {@link #ORIGINAL}
+	 * 
+	 * @return
+	 * the filename;
+	 * not {@code null}
+	 */
+	public String getName(final int download, final int column) {
+		return pNames.get(getNameId(download, column));
+	}
+	
+	/**
+	 * Groups the downloads by URL.
+	 * 
+	 * @return
+	 * the groups of downloads with the same URL,
+	 * in the order of the first appearance of their URLs;
+	 * the downloads within a group are in the order of addition;
+	 * not {@code null}
+	 */
+	public UrlGroups groupByUrl() {
+		// counting sort by URL ID, which keeps the order of the downloads
+		final int urlCount = pUrls.size();
+		final int[] starts = new int[urlCount + 1];
+		for (int download = 0; download < pSize; download++)
+			starts[pUrlIds[download] + 1]++;
+		for (int url = 0; url < urlCount; url++)
+			starts[url + 1] += starts[url];
+		final int[] next = Arrays.copyOf(starts, urlCount);
+		final int[] downloads = new int[pSize];
+		for (int download = 0; download < pSize; download++)
+			downloads[next[pUrlIds[download]]++] = download;
+		return new UrlGroups(downloads, starts);
+	}
+	
+	/**
+	 * Downloads grouped by URL.
+	 * Empty groups (URLs without downloads) may occur.
+	 */
+	public static class UrlGroups {
+		
+		private final int[] pDownloads;
+		private final int[] pStarts;
+		
+		private UrlGroups(final int[] downloads, final int[] starts) {
+			pDownloads = downloads;
+			pStarts = starts;
+		}
+		
+		/**
+		 * Returns the number of groups.
+		 * 
+		 * @return
+		 * the number of groups
+		 */
+		public int count() {
+			return pStarts.length - 1;
+		}
+		
+		/**
+		 * Returns the number of downloads in a group.
+		 * 
+		 * @param group
+		 * the index of the group
+		 * 
+		 * @return
+		 * the number of downloads in the group
+		 */
+		public int size(final int group) {
+			return pStarts[group + 1] - pStarts[group];
+		}
+		
+		/**
+		 * Returns a download of a group.
+		 * 
+		 * @param group
+		 * the index of the group
+		 * 
+		 * @param i
+		 * the position of the download in the group
+		 * 
+		 * @return
+		 * the index of the download
+		 */
+		public int get(final int group, final int i) {
+			return pDownloads[pStarts[group] + i];
+		}
+	}
+	
+}
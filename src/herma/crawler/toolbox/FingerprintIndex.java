@@ -0,0 +1,227 @@
+/* This Source Code Form is subject to the terms of the hermA Licence.
+ * If a copy of the licence was not distributed with this file, You have
+ * received this Source Code Form in a manner that does not comply with
+ * the terms of the licence.
+ */
+package herma.crawler.toolbox;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import herma.crawler.toolbox.common.Common;
+
+/**
+ * A persistent index of {@link TokenSequenceFingerprint}s
+ * of tokens files, so that files unchanged since an earlier run
+ * do not have to be read again.
+ * <p>
+ * The index is a UTF-8 plain text file with one line per tokens file
+ * and five fields separated by tabulator characters:
+ * the filename, the file size in bytes, the time of last modification
+ * (in milliseconds since the epoch), the fingerprint (32 hexadecimal
+ * digits) and a flag ({@code 0} or {@code 1}) telling whether the file
+ * shared its fingerprint with a file having a different token sequence.
+ * A fingerprint from the index is only used for a file if its size and
+ * its time of last modification are unchanged.
+ * </p>
+ */
+public class FingerprintIndex {
+	
+	private final Map<String, Entry> pEntries;
+	
+	/**
+	 * Creates an empty {@link FingerprintIndex}.
+	 * 
+	 * @param concurrent
+	 * whether the index is going to be modified by several threads
+	 */
+	public FingerprintIndex(final boolean concurrent) {
+		pEntries = concurrent ? new ConcurrentHashMap<>() : new HashMap<>();
+	}
+	
+	/**
+	 * Loads a {@link FingerprintIndex} from a file.
+	 * If the file does not exist, the index is empty.
+	 * Malformed lines are skipped.
+	 * 
+	 * @param indexFile
+	 * (a {@link Path} locating) the index file;
+	 * not {@code null}
+	 * 
+	 * @return
+	 * the loaded {@link FingerprintIndex};
+	 * not {@code null}
+	 * 
+	 * @throws IOException
+	 * if an I/O error occurs
+	 */
+	public static FingerprintIndex load(final Path indexFile) throws IOException {
+		final FingerprintIndex result = new FingerprintIndex(false);
+		if (!Files.exists(indexFile))
+			return result;
+		try (final BufferedReader reader = Files.newBufferedReader(indexFile, StandardCharsets.UTF_8)) {
+			while (true) {
+				final String line = reader.readLine();
+				if (line == null)
+					break;
+				final String[] parts = Common.TAB_PATTERN.split(line, -1);
+				if (parts.length != 5)
+					continue;
+				try {
+					result.put(parts[0], Long.parseLong(parts[1]), Long.parseLong(parts[2]), TokenSequenceFingerprint.parse(parts[3]), "1".equals(parts[4]));
+				} catch (final IllegalArgumentException e) {
+					continue;
+				}
+			}
+		}
+		return result;
+	}
+	
+	/**
+	 * Looks up the fingerprint of a file.
+	 * 
+	 * @param filename
+	 * the filename;
+	 * not {@code null}
+	 * 
+	 * @param size
+	 * the current size of the file
+	 * 
+	 * @param lastModified
+	 * the current time of last modification of the file,
+	 * in milliseconds since the epoch
+	 * 
+	 * @return
+	 * the {@link Entry} of the file if it is in the index
+	 * with the same size and time of last modification,
+	 * {@code null} otherwise
+	 */
+	public Entry lookup(final String filename, final long size, final long lastModified) {
+		final Entry entry = pEntries.get(filename);
+		if (entry == null || entry.size != size || entry.lastModified != lastModified)
+			return null;
+		return entry;
+	}
+	
+	/**
+	 * Adds a file to the index, replacing any previous entry
+	 * for the same filename.
+	 * 
+	 * @param filename
+	 * the filename;
+	 * not {@code null}
+	 * 
+	 * @param size
+	 * the size of the file
+	 * 
+	 * @param lastModified
+	 * the time of last modification of the file,
+	 * in milliseconds since the epoch
+	 * 
+	 * @param fingerprint
+	 * the fingerprint of the token sequence in the file;
+	 * not {@code null}
+	 * 
+	 * @param collision
+	 * whether the file shares its fingerprint with
+	 * a file having a different token sequence
+	 */
+	public void put(final String filename, final long size, final long lastModified, final TokenSequenceFingerprint fingerprint, final boolean collision) {
+		pEntries.put(filename, new Entry(size, lastModified, fingerprint, collision));
+	}
+	
+	/**
+	 * Looks up the entry of a file regardless of its size and
+	 * time of last modification.
+	 * 
+	 * @param filename
+	 * the filename;
+	 * not {@code null}
+	 * 
+	 * @return
+	 * the {@link Entry} of the file,
+	 * or {@code null} if the file is not in the index
+	 */
+	public Entry get(final String filename) {
+		return pEntries.get(filename);
+	}
+	
+	/**
+	 * Saves the index to a file. The index is written to a temporary
+	 * file in the same directory first, which then replaces the index
+	 * file, so that an interrupted run does not leave an incomplete index.
+	 * 
+	 * @param indexFile
+	 * (a {@link Path} locating) the index file;
+	 * not {@code null}
+	 * 
+	 * @throws IOException
+	 * if an I/O error occurs
+	 */
+	public void save(final Path indexFile) throws IOException {
+		final Path tempFile = Files.createTempFile(indexFile.getParent(), indexFile.getFileName().toString(), "");
+		try {
+			try (final BufferedWriter writer = Files.newBufferedWriter(tempFile, StandardCharsets.UTF_8, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+				for (final Map.Entry<String, Entry> mapEntry : pEntries.entrySet()) {
+					final Entry entry = mapEntry.getValue();
+					writer.append(mapEntry.getKey());
+					writer.append('\t').append(Long.toString(entry.size));
+					writer.append('\t').append(Long.toString(entry.lastModified));
+					writer.append('\t').append(entry.fingerprint.toString());
+					writer.append('\t').append(entry.collision ? '1' : '0');
+					writer.append('\n');
+				}
+				writer.flush();
+			}
+			Files.move(tempFile, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(tempFile);
+		}
+	}
+	
+	/**
+	 * An entry of a {@link FingerprintIndex}.
+	 */
+	public static class Entry {
+		
+		/**
+		 * The size of the file in bytes.
+		 */
+		public final long size;
+		
+		/**
+		 * The time of last modification of the file,
+		 * in milliseconds since the epoch.
+		 */
+		public final long lastModified;
+		
+		/**
+		 * The fingerprint of the token sequence in the file;
+		 * not {@code null}.
+		 */
+		public final TokenSequenceFingerprint fingerprint;
+		
+		/**
+		 * Whether the file shares its fingerprint with
+		 * a file having a different token sequence.
+		 */
+		public volatile boolean collision;
+		
+		private Entry(final long size, final long lastModified, final TokenSequenceFingerprint fingerprint, final boolean collision) {
+			this.size = size;
+			this.lastModified = lastModified;
+			this.fingerprint = fingerprint;
+			this.collision = collision;
+		}
+	}
+	
+}
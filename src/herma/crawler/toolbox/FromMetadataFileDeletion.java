@@ -5,16 +5,21 @@
  */
 package herma.crawler.toolbox;
 
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
 import java.util.function.Predicate;
 
+import herma.crawler.toolbox.common.ColumnScanner;
 import herma.crawler.toolbox.common.Common;
 
 /**
@@ -22,16 +27,23 @@ import herma.crawler.toolbox.common.Common;
  */
 public class FromMetadataFileDeletion {
 	
+	private static final int BUFFER_SIZE = 1 << 20;
+	
 	/**
 	 * Deletes lines from a metadata file that match some condition
 	 * tested by a {@link Predicate}.
 	 * <p>
 	 * {@link Predicate#test(Object)}
 	 * is called for each line of the metadata file,
-	 * split by {@link Common#TAB_PATTERN},
+	 * scanned by a {@link ColumnScanner}
+	 * (which is reused for the next line),
 	 * and the line is deleted if the method
 	 * returns {@code true}. 
 	 * </p>
+	 * <p>
+	 * If the {@link Predicate} is a {@link ColumnFilter},
+	 * the lines are tested without decoding and splitting them instead.
+	 * </p>
 	 * 
 	 * @param metafile
 	 * (a {@link Path} locating) the metadata file;
@@ -44,23 +56,125 @@ public class FromMetadataFileDeletion {
 	 * @throws IOException
 	 * if an I/O error occurs
 	 */
-	public static void deleteFromMetaFile(final Path metafile, final Predicate<? super String[]> deletionDecision) throws IOException {
-		final Path tempFile = tempCopy(metafile);
-		try (final BufferedWriter writer = Files.newBufferedWriter(metafile, StandardCharsets.UTF_8, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
-			try (final BufferedReader reader = Files.newBufferedReader(tempFile, StandardCharsets.UTF_8)) {
+	public static void deleteFromMetaFile(final Path metafile, final Predicate<? super ColumnScanner> deletionDecision) throws IOException {
+		final Path tempFile = writeFilteredCopy(metafile, deletionDecision);
+		try {
+			replace(metafile, tempFile);
+		} finally {
+			Files.deleteIfExists(tempFile);
+		}
+	}
+	
+	/**
+	 * Writes the lines of a metadata file that are not deleted by
+	 * {@link #deleteFromMetaFile(Path, Predicate)} to a temp file
+	 * in the same directory, leaving the metadata file intact.
+	 * 
+	 * @param metafile
+	 * (a {@link Path} locating) the metadata file;
+	 * not {@code null}
+	 * 
+	 * @param deletionDecision
+	 * a {@link Predicate};
+	 * not {@code null}
+	 * 
+	 * @return
+	 * (a {@link Path} locating) the temp file,
+	 * which is to be passed to {@link #replace(Path, Path)}
+	 * or deleted;
+	 * not {@code null}
+	 * 
+	 * @throws IOException
+	 * if an I/O error occurs;
+	 * the temp file has been deleted then
+	 */
+	static Path writeFilteredCopy(final Path metafile, final Predicate<? super ColumnScanner> deletionDecision) throws IOException {
+		final Path tempFile = Files.createTempFile(metafile.getParent(), metafile.getFileName().toString(), "");
+		boolean written = false;
+		try {
+			Common.copyPermissions(metafile, tempFile);
+			if (deletionDecision instanceof ColumnFilter)
+				copyRemainingBytes(metafile, tempFile, (ColumnFilter) deletionDecision);
+			else
+				copyRemainingLines(metafile, tempFile, deletionDecision);
+			written = true;
+		} finally {
+			if (!written)
+				Files.deleteIfExists(tempFile);
+		}
+		return tempFile;
+	}
+	
+	private static void copyRemainingLines(final Path metafile, final Path tempFile, final Predicate<? super ColumnScanner> deletionDecision) throws IOException {
+		final ColumnScanner columns = new ColumnScanner();
+		try (final BufferedWriter writer = Files.newBufferedWriter(tempFile, StandardCharsets.UTF_8, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+			try (final BufferedReader reader = Files.newBufferedReader(metafile, StandardCharsets.UTF_8)) {
 				while (true) {
 					final String line = reader.readLine();
 					if (line == null)
 						break;
-					final String[] columns = Common.TAB_PATTERN.split(line, -1);
-					if (deletionDecision.test(columns))
+					if (deletionDecision.test(columns.scan(line)))
 						continue;
 					writer.append(line).append('\n');
 				}
 			}
 			writer.flush();
 		}
-		Files.deleteIfExists(tempFile);
+	}
+	
+	// the lines are neither decoded nor split; the remaining lines are copied as they are
+	private static void copyRemainingBytes(final Path metafile, final Path tempFile, final ColumnFilter deletionDecision) throws IOException {
+		try (final OutputStream out = new BufferedOutputStream(Files.newOutputStream(tempFile, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE), BUFFER_SIZE)) {
+			try (final InputStream in = Files.newInputStream(metafile)) {
+				byte[] buffer = new byte[BUFFER_SIZE];
+				// buffer[0] to buffer[incomplete - 1] is the beginning of a line
+				int incomplete = 0;
+				while (true) {
+					final int read = in.read(buffer, incomplete, buffer.length - incomplete);
+					if (read < 0)
+						break;
+					final int end = incomplete + read;
+					int lineStart = 0;
+					for (int i = incomplete; i < end; i++) {
+						if (buffer[i] != '\n')
+							continue;
+						if (!deletionDecision.test(buffer, lineStart, i))
+							out.write(buffer, lineStart, i + 1 - lineStart);
+						lineStart = i + 1;
+					}
+					incomplete = end - lineStart;
+					System.arraycopy(buffer, lineStart, buffer, 0, incomplete);
+					if (incomplete == buffer.length)
+						buffer = Arrays.copyOf(buffer, 2 * buffer.length);
+				}
+				// the last line may lack its line break
+				if (incomplete > 0 && !deletionDecision.test(buffer, 0, incomplete)) {
+					out.write(buffer, 0, incomplete);
+					out.write('\n');
+				}
+			}
+			out.flush();
+		}
+	}
+	
+	/**
+	 * Replaces a metadata file by a copy written by
+	 * {@link #writeFilteredCopy(Path, Predicate)}
+	 * in a single step.
+	 * 
+	 * @param metafile
+	 * (a {@link Path} locating) the metadata file;
+	 * not {@code null}
+	 * 
+	 * @param tempFile
+	 * (a {@link Path} locating) the copy;
+	 * not {@code null}
+	 * 
+	 * @throws IOException
+	 * if an I/O error occurs
+	 */
+	static void replace(final Path metafile, final Path tempFile) throws IOException {
+		Files.move(tempFile, metafile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
 	}
 	
 	/**
@@ -86,13 +200,14 @@ public class FromMetadataFileDeletion {
 	 * @throws IOException
 	 * if an I/O error occurs
 	 */
-	public static void mockDeleteFromMetaFile(final Path metafile, final Predicate<? super String[]> deletionDecision) throws IOException {
+	public static void mockDeleteFromMetaFile(final Path metafile, final Predicate<? super ColumnScanner> deletionDecision) throws IOException {
+		final ColumnScanner columns = new ColumnScanner();
 		try (final BufferedReader reader = Files.newBufferedReader(metafile, StandardCharsets.UTF_8)) {
 			while (true) {
 				final String line = reader.readLine();
 				if (line == null)
 					break;
-				if (deletionDecision.test(Common.TAB_PATTERN.split(line, -1))) {
+				if (deletionDecision.test(columns.scan(line))) {
 					System.out.print("\tMocking the deletion of metadata line: ");
 					System.out.println(line);
 				}
@@ -100,13 +215,4 @@ public class FromMetadataFileDeletion {
 		}
 	}
 	
-	private static Path tempCopy(final Path file) throws IOException {
-		final Path tempFile = Files.createTempFile(file.getParent(), file.getFileName().toString(), "");
-		try (final OutputStream outputStream = Files.newOutputStream(tempFile, StandardOpenOption.WRITE)) {
-			Files.copy(file, outputStream);
-			outputStream.flush();
-		}
-		return tempFile;
-	}
-	
 }
@@ -0,0 +1,143 @@
+/* This Source Code Form is subject to the terms of the hermA Licence.
+ * If a copy of the licence was not distributed with this file, You have
+ * received this Source Code Form in a manner that does not comply with
+ * the terms of the licence.
+ */
+package herma.crawler.toolbox;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map.Entry;
+
+import herma.crawler.toolbox.common.WorkerPool;
+
+/**
+ * Finds byte-identical files in one or more directories, such as the
+ * {@link herma.crawler.toolbox.common.CommonPaths#ORIGINAL_DIR}
+ * directories or the
+ * {@link herma.crawler.toolbox.common.CommonPaths#TEXT_ORIGINAL_DIR}
+ * sub-directories of the text directories of web crawler output directories.
+ * <p>
+ * Reading files is avoided as far as possible: Files are grouped by
+ * their size first, which is known without reading them. Only files
+ * sharing their size with another file are read, and only their first
+ * {@value #LEADING_BLOCK_SIZE} bytes. Only files whose sizes and leading
+ * blocks are the same as those of another file are read completely.
+ * Files are considered identical if their SHA-256 digests are equal.
+ * </p>
+ */
+public class IdenticalFileDetection {
+	
+	/**
+	 * The number of bytes at the beginning of a file that are compared
+	 * before reading the whole file:
+	 * {@value #LEADING_BLOCK_SIZE}
+	 */
+	public static final int LEADING_BLOCK_SIZE = 64 * 1024;
+	
+	private static final String DIGEST_ALGORITHM = "SHA-256";
+	
+	/**
+	 * Finds groups of byte-identical files.
+	 * 
+	 * @param files
+	 * the files;
+	 * not {@code null}
+	 * 
+	 * @param threads
+	 * the number of threads reading the files
+	 * 
+	 * @return
+	 * the groups of at least two identical files
+	 * (lists of names returned by {@link CrawlFiles#nameOf(Path)});
+	 * not {@code null}
+	 * 
+	 * @throws IOException
+	 * if an I/O error occurs
+	 */
+	public static ArrayList<ArrayList<String>> findIdenticalFiles(final CrawlFiles files, final int threads) throws IOException {
+		final HashMap<Long, ArrayList<Path>> bySize = new HashMap<>();
+		files.forEach(1, file -> bySize.computeIfAbsent(Files.size(file), k -> new ArrayList<>(1)).add(file));
+		
+		final ArrayList<ArrayList<String>> result = new ArrayList<>();
+		try (final WorkerPool workers = new WorkerPool(threads, 4 * threads)) {
+			for (final Entry<Long, ArrayList<Path>> entry : bySize.entrySet()) {
+				final long size = entry.getKey().longValue();
+				final ArrayList<Path> sameSize = entry.getValue();
+				if (sameSize.size() < 2)
+					continue;
+				// empty files are identical without reading them
+				if (size == 0L) {
+					synchronized (result) {
+						result.add(names(files, sameSize));
+					}
+					continue;
+				}
+				workers.submit(() -> {
+					final ArrayList<ArrayList<String>> groups = new ArrayList<>();
+					for (final ArrayList<Path> sameLeadingBlock : groupByDigest(sameSize, LEADING_BLOCK_SIZE)) {
+						if (sameLeadingBlock.size() < 2)
+							continue;
+						// otherwise, the leading block is the whole file
+						if (size > LEADING_BLOCK_SIZE) {
+							for (final ArrayList<Path> sameContent : groupByDigest(sameLeadingBlock, Long.MAX_VALUE))
+								if (sameContent.size() > 1)
+									groups.add(names(files, sameContent));
+						} else {
+							groups.add(names(files, sameLeadingBlock));
+						}
+					}
+					synchronized (result) {
+						result.addAll(groups);
+					}
+				});
+			}
+			workers.finish();
+		}
+		return result;
+	}
+	
+	private static ArrayList<String> names(final CrawlFiles files, final ArrayList<Path> group) {
+		final ArrayList<String> result = new ArrayList<>(group.size());
+		for (final Path file : group)
+			result.add(files.nameOf(file));
+		return result;
+	}
+	
+	private static ArrayList<ArrayList<Path>> groupByDigest(final ArrayList<Path> files, final long maxBytes) throws IOException {
+		final HashMap<ByteBuffer, ArrayList<Path>> byDigest = new HashMap<>();
+		final MessageDigest digest = newDigest();
+		final byte[] buffer = new byte[LEADING_BLOCK_SIZE];
+		for (final Path file : files) {
+			try (final InputStream in = Files.newInputStream(file)) {
+				long remaining = maxBytes;
+				while (remaining > 0L) {
+					final int read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+					if (read < 0)
+						break;
+					digest.update(buffer, 0, read);
+					remaining -= read;
+				}
+			}
+			byDigest.computeIfAbsent(ByteBuffer.wrap(digest.digest()), k -> new ArrayList<>(1)).add(file);
+		}
+		return new ArrayList<>(byDigest.values());
+	}
+	
+	private static MessageDigest newDigest() {
+		try {
+			return MessageDigest.getInstance(DIGEST_ALGORITHM);
+		} catch (final NoSuchAlgorithmException e) {
+			// every Java platform is required to support SHA-256
+			throw new IllegalStateException(e);
+		}
+	}
+	
+}
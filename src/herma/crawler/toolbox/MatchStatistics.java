@@ -25,11 +25,11 @@ import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
+import herma.crawler.toolbox.common.ColumnScanner;
 import herma.crawler.toolbox.common.Common;
 
 public class MatchStatistics {
 	
-	private static final Pattern TAB_PATTERN = Common.TAB_PATTERN;
 	private static final Pattern SPACE_PATTERN = Pattern.compile(Pattern.quote(" "));
 	private static final Pattern SPACES_PATTERN = Pattern.compile("\\s+");
 	
@@ -79,13 +79,14 @@ public class MatchStatistics {
 	}
 	
 	private static void produceStatistics(final Path matchesFile, final Iterable<? extends Keyphrase> keyphrases, final HashMap<String, BigInteger> matchesStatistics, final HashMap<String, BigInteger> keyphrasesStatistics) throws IOException {
+		final ColumnScanner columns = new ColumnScanner();
 		try (final BufferedReader reader = Files.newBufferedReader(matchesFile, StandardCharsets.UTF_8)) {
 			while (true) {
 				final String line = reader.readLine();
 				if (line == null)
 					break;
-				final String[] parts = TAB_PATTERN.split(line, -1);
-				final String countStr = parts[2];
+				columns.scan(line);
+				final String countStr = columns.getColumn(2);
 				final BigInteger count;
 				try {
 					count = new BigInteger(countStr);
@@ -93,7 +94,7 @@ public class MatchStatistics {
 					System.err.println("not a valid number: " + countStr);
 					continue;
 				}
-				final String match = parts[1];
+				final String match = columns.getColumn(1);
 				add(matchesStatistics, match, count);
 				final String[] matchWordsLowercased = SPACE_PATTERN.split(match.toLowerCase(Locale.ROOT));
 				for (final Keyphrase keyphrase : keyphrases)
@@ -8,31 +8,105 @@ package herma.crawler.toolbox;
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
 import java.io.UncheckedIOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.FileSystem;
 import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Optional;
-import java.util.Set;
-import java.util.stream.Collectors;
+import java.util.Map.Entry;
 import java.util.stream.Stream;
 
+import herma.crawler.toolbox.common.ColumnScanner;
 import herma.crawler.toolbox.common.Common;
 import herma.crawler.toolbox.common.CommonPaths;
+import herma.crawler.toolbox.common.CrawlIndex;
+import herma.crawler.toolbox.common.FileCopier;
+import herma.crawler.toolbox.common.PackWriter;
+import herma.crawler.toolbox.common.PackedDirectories;
+import herma.crawler.toolbox.common.WorkerPool;
 
 public class Merge {
 	
 	private static final String DUPLICATION_LOG_FILE_NAME = "merge-info.txt";
 	
+	// appended to the names of the metadata files of the target directory before appending
+	private static final String PREVIOUS_SUFFIX = ".previous";
+	
+	// metadata files are read and written in large blocks
+	private static final int METADATA_BUFFER_SIZE = 1 << 20;
+	
+	// the number of downloads whose files are copied between two journal entries
+	private static final int COPY_BATCH_SIZE = 10000;
+	
+	private static final String PREVIOUS_METADATA_STAGE = "previous metadata";
+	private static final String DUPLICATION_LOG_STAGE = "duplication log";
+	private static final String METADATA_STAGE = "metadata ";
+	private static final String COPY_BATCH_STAGE = "copy batch ";
+	private static final String PACK_STAGE = "packs";
+	private static final String COMPLETED_STAGE = "completed";
+	
+	private static final String THREADS_OPTION = "threads";
+	private static final String LINK_OPTION = "link";
+	private static final String VERIFY_OPTION = "verify";
+	private static final String RESUME_OPTION = "resume";
+	private static final String APPEND_OPTION = "append";
+	private static final String PACK_OPTION = "pack";
+	
 	public static void main(final String[] args) {
-		final int numberOfCrawlDirs = args.length - 3;
+		int threads = 1;
+		boolean link = false;
+		boolean verify = false;
+		boolean resume = false;
+		boolean append = false;
+		boolean pack = false;
+		// arguments not named like an option are the positional arguments
+		final ArrayList<String> positionalArgs = new ArrayList<>(args.length);
+		for (final String arg : args) {
+			final String option = Common.optionName(arg);
+			final String value = Common.optionValue(arg);
+			if (!isOption(option)) {
+				positionalArgs.add(arg);
+				continue;
+			}
+			if (!isValidOption(option, value)) {
+				System.err.print("Invalid option: ");
+				System.err.println(arg);
+				System.exit(1);
+				return;
+			}
+			switch (option) {
+				case THREADS_OPTION:
+					threads = Common.parsePositiveInt(value);
+					break;
+				case LINK_OPTION:
+					link = true;
+					break;
+				case VERIFY_OPTION:
+					verify = true;
+					break;
+				case RESUME_OPTION:
+					resume = true;
+					break;
+				case APPEND_OPTION:
+					append = true;
+					break;
+				case PACK_OPTION:
+					pack = true;
+					break;
+			}
+		}
+		
+		final int numberOfCrawlDirs = positionalArgs.size() - 3;
 		if (numberOfCrawlDirs < 0) {
 			System.err.println("Invalid number of command line arguments.");
 			System.err.println("Expecting three or more arguments:");
@@ -42,6 +116,12 @@ public class Merge {
 			System.err.println("input directory 1");
 			System.err.println("input directory 2");
 			System.err.println("...");
+			System.err.println("optional: \"" + THREADS_OPTION + "=N\" to load and merge metadata, compare and copy files with N threads");
+			System.err.println("optional: \"" + LINK_OPTION + "\" to create hard links instead of copies where possible");
+			System.err.println("optional: \"" + VERIFY_OPTION + "\" to compare tokenizations with equal fingerprints line by line");
+			System.err.println("optional: \"" + RESUME_OPTION + "\" to resume an interrupted merge with the same arguments");
+			System.err.println("optional: \"" + APPEND_OPTION + "\" to add the input directories to the merged files already in the output directory");
+			System.err.println("optional: \"" + PACK_OPTION + "\" to write each output sub-directory as a single pack file");
 			System.exit(1);
 			return;
 		} else if (numberOfCrawlDirs == 0) {
@@ -50,71 +130,207 @@ public class Merge {
 			return;
 		}
 		
-		final int inputColumn = loadInputColumn(args[1]);
+		if (pack && (append || link)) {
+			System.err.println("The option \"" + PACK_OPTION + "\" cannot be combined with \"" + APPEND_OPTION + "\" or \"" + LINK_OPTION + "\".");
+			System.exit(1);
+			return;
+		}
+		
+		final int inputColumn = loadInputColumn(positionalArgs.get(1));
 		if (inputColumn < 0) {
 			System.exit(1);
 			return;
 		}
 		
 		final FileSystem fs = FileSystems.getDefault();
-		final Path shortlistFile = Common.loadPath(fs, args[0]);
-		final Path targetDir = Common.loadPath(fs, args[2]);
+		final Path shortlistFile = Common.loadPath(fs, positionalArgs.get(0));
+		final Path targetDir = Common.loadPath(fs, positionalArgs.get(2));
 		
 		final ArrayList<Path> crawlDirs = new ArrayList<>(numberOfCrawlDirs);
-		for (int i = 3; i < args.length; i++)
-			crawlDirs.add(Common.loadPath(fs, args[i]));
+		for (int i = 3; i < positionalArgs.size(); i++)
+			crawlDirs.add(Common.loadPath(fs, positionalArgs.get(i)));
+		
+		// a packed directory is hidden by a directory of the same name, so the two are never mixed
+		for (final Path targetSubDir : targetSubDirs(targetDir)) {
+			if (!pack && PackedDirectories.isPacked(targetSubDir)) {
+				System.err.println("The output directory contains packed directories, which can only be written with \"" + PACK_OPTION + "\": " + PackedDirectories.packFileOf(targetSubDir));
+				System.exit(1);
+				return;
+			}
+			if (pack && Files.exists(targetSubDir)) {
+				System.err.println("The output directory contains directories which would hide their packs: " + targetSubDir);
+				System.exit(1);
+				return;
+			}
+		}
 		
 		try {
 			
-			final HashSet<String> shortlist = loadShortlist(shortlistFile);
+			if (MergeJournal.exists(targetDir) && !resume) {
+				System.err.println("A merge into this output directory has been interrupted: " + targetDir);
+				System.err.println("Specify \"" + RESUME_OPTION + "\" to resume it.");
+				System.exit(1);
+				return;
+			}
+			final StringBuilder description = new StringBuilder(append ? APPEND_OPTION : (pack ? PACK_OPTION : "merge")).append('\t').append(shortlistFile.toAbsolutePath()).append('\t').append(positionalArgs.get(1));
+			for (final Path crawlDir : crawlDirs)
+				description.append('\t').append(crawlDir.toAbsolutePath());
+			final MergeJournal journal = MergeJournal.open(targetDir, description.toString());
+			if (journal == null) {
+				System.err.println("The interrupted merge into this output directory had different arguments: " + targetDir);
+				System.exit(1);
+				return;
+			}
+			if (journal.isCompleted(COMPLETED_STAGE)) {
+				// interrupted while cleaning up
+				if (append)
+					deletePreviousMetadata(targetDir);
+				journal.delete();
+				return;
+			}
+			
+			// when appending, the target directory is the earliest input directory, as it was before
+			if (append) {
+				if (!journal.isCompleted(PREVIOUS_METADATA_STAGE)) {
+					keepPreviousMetadata(targetDir, journal.isResumed());
+					journal.complete(PREVIOUS_METADATA_STAGE);
+				}
+				crawlDirs.add(0, targetDir);
+			}
+			final int numberOfInputs = crawlDirs.size();
 			
-			final HashMap<String, ArrayList<DownloadInfo>> downloadsByUrl = new HashMap<>(); 
+			final ArrayList<Path> sourceUrlsFiles = new ArrayList<>(numberOfInputs);
+			final ArrayList<Path> sourceFilesFiles = new ArrayList<>(numberOfInputs);
+			final ArrayList<Path> sourceMatchesFiles = new ArrayList<>(numberOfInputs);
 			
-			final ArrayList<Path> sourceUrlsFiles = new ArrayList<>(numberOfCrawlDirs);
-			final ArrayList<Path> sourceFilesFiles = new ArrayList<>(numberOfCrawlDirs);
-			final ArrayList<Path> sourceMatchesFiles = new ArrayList<>(numberOfCrawlDirs);
+			for (int i = 0; i < numberOfInputs; i++) {
+				final Path crawlDir = crawlDirs.get(i);
+				final String suffix = (append && i == 0) ? PREVIOUS_SUFFIX : "";
+				sourceUrlsFiles.add(crawlDir.resolve(CommonPaths.URLS_FILE + suffix));
+				sourceFilesFiles.add(crawlDir.resolve(CommonPaths.FILES_FILE + suffix));
+				sourceMatchesFiles.add(crawlDir.resolve(CommonPaths.MATCHES_FILE + suffix));
+			}
 			
-			for (final Path crawlDir : crawlDirs) {
-				final Path urlsFile = crawlDir.resolve(CommonPaths.URLS_FILE);
-				final Path filesFile = crawlDir.resolve(CommonPaths.FILES_FILE);
-				sourceUrlsFiles.add(urlsFile);
-				sourceFilesFiles.add(filesFile);
-				sourceMatchesFiles.add(crawlDir.resolve(CommonPaths.MATCHES_FILE));
-				loadMetadata(crawlDir, urlsFile, filesFile, inputColumn, downloadsByUrl);
+			// the crawler output directories are loaded in parallel, but combined in the order given
+			final CrawlMetadata[] metadata = new CrawlMetadata[numberOfInputs];
+			try (final WorkerPool workers = new WorkerPool(threads, numberOfInputs)) {
+				for (int i = 0; i < numberOfInputs; i++) {
+					final int index = i;
+					workers.submit(() -> metadata[index] = loadMetadata(index, sourceUrlsFiles.get(index), sourceFilesFiles.get(index)));
+				}
+				workers.finish();
+			}
+			final DownloadTable downloads = new DownloadTable();
+			for (int i = 0; i < numberOfInputs; i++) {
+				for (final String originalFilename : metadata[i].filesWithoutUrl)
+					System.err.println("file without URL: " + originalFilename);
+				downloads.addAll(metadata[i].downloads);
+				metadata[i] = null;
 			}
 			
-			final HashMap<String, DownloadInfo> retainedOriginalsMap = new HashMap<>();
-			final HashMap<String, DownloadInfo> retainedTextExtractsMap = new HashMap<>();
-			final HashMap<String, DownloadInfo> retainedLemmaFilesMap = new HashMap<>();
+			final BitSet shortlist = loadShortlist(shortlistFile, downloads);
+			
+			// download indices by filename ID, -1 for filenames not retained
+			final int[] retainedOriginals = newRetainedNames(downloads);
+			final int[] retainedTextExtracts = newRetainedNames(downloads);
+			final int[] retainedLemmaFiles = newRetainedNames(downloads);
 			
-			final ArrayList<DownloadInfo> retain = new ArrayList<>();
+			final BitSet retain = new BitSet(downloads.size());
 			final ArrayList<DuplicationLogEntry> duplicationLog = new ArrayList<>();
-			determineDownloadsToRetain(downloadsByUrl, shortlist, retain, duplicationLog, retainedOriginalsMap, retainedTextExtractsMap, retainedLemmaFilesMap);
+			determineDownloadsToRetain(downloads, crawlDirs, inputColumn, shortlist, threads, verify, append, retain, duplicationLog, retainedOriginals, retainedTextExtracts, retainedLemmaFiles);
 			
-			logDuplications(duplicationLog, targetDir.resolve(DUPLICATION_LOG_FILE_NAME));
+			if (!journal.isCompleted(DUPLICATION_LOG_STAGE)) {
+				final Path previousLogFile = append ? targetDir.resolve(DUPLICATION_LOG_FILE_NAME + PREVIOUS_SUFFIX) : null;
+				logDuplications(duplicationLog, previousLogFile, targetDir.resolve(DUPLICATION_LOG_FILE_NAME));
+				journal.complete(DUPLICATION_LOG_STAGE);
+			}
 			
-			mergeMetadata(sourceUrlsFiles, targetDir.resolve(CommonPaths.URLS_FILE), retainedOriginalsMap.keySet(), 3);
-			mergeMetadata(sourceFilesFiles, targetDir.resolve(CommonPaths.FILES_FILE), retainedTextExtractsMap.keySet(), 2);
-			mergeMetadata(sourceMatchesFiles, targetDir.resolve(CommonPaths.MATCHES_FILE), retainedLemmaFilesMap.keySet(), 0);
-			copyFiles(retain, targetDir);
+			// the downloads are only read from now on, so the files can be merged concurrently
+			try (final WorkerPool workers = new WorkerPool(Math.min(threads, 3), 3)) {
+				workers.submit(() -> mergeMetadata(journal, sourceUrlsFiles, targetDir, CommonPaths.URLS_FILE, downloads, retainedOriginals, 3));
+				workers.submit(() -> mergeMetadata(journal, sourceFilesFiles, targetDir, CommonPaths.FILES_FILE, downloads, retainedTextExtracts, 2));
+				workers.submit(() -> mergeMetadata(journal, sourceMatchesFiles, targetDir, CommonPaths.MATCHES_FILE, downloads, retainedLemmaFiles, 0));
+				workers.finish();
+			}
+			final boolean copied = pack ? packFiles(journal, downloads, crawlDirs, retain, targetDir, threads) : copyFiles(journal, downloads, crawlDirs, retain, targetDir, threads, link, append);
+			if (!copied) {
+				System.exit(3);
+				return;
+			}
+			journal.complete(COMPLETED_STAGE);
+			if (append)
+				deletePreviousMetadata(targetDir);
+			journal.delete();
 			
 		} catch (final IOException e) {
 			throw new UncheckedIOException(e);
 		}
 	}
 	
+	private static Path[] targetSubDirs(final Path targetDir) {
+		final Path targetTextDir = targetDir.resolve(CommonPaths.TEXT_DIR);
+		return new Path[] {
+				targetDir.resolve(CommonPaths.ORIGINAL_DIR),
+				targetTextDir.resolve(CommonPaths.TEXT_ORIGINAL_DIR),
+				targetTextDir.resolve(CommonPaths.TEXT_TOKENS_DIR),
+				targetTextDir.resolve(CommonPaths.TEXT_POS_LEMMA_DIR),
+				targetTextDir.resolve(CommonPaths.TEXT_PARSER_INPUT_DIR),
+				targetTextDir.resolve(CommonPaths.TEXT_PARSE_DIR)
+			};
+	}
+	
+	private static final String[] PREVIOUS_METADATA_FILES = { CommonPaths.URLS_FILE, CommonPaths.FILES_FILE, CommonPaths.MATCHES_FILE, DUPLICATION_LOG_FILE_NAME };
+	
+	// the metadata files of the target directory are inputs, so they are moved aside before being rewritten
+	private static void keepPreviousMetadata(final Path targetDir, final boolean resumed) throws IOException {
+		for (final String fileName : PREVIOUS_METADATA_FILES) {
+			final Path file = targetDir.resolve(fileName);
+			final Path previousFile = targetDir.resolve(fileName + PREVIOUS_SUFFIX);
+			if (Files.exists(file))
+				Files.move(file, previousFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			else if (!resumed)
+				Files.deleteIfExists(previousFile);
+		}
+	}
+	
+	private static void deletePreviousMetadata(final Path targetDir) throws IOException {
+		for (final String fileName : PREVIOUS_METADATA_FILES)
+			Files.deleteIfExists(targetDir.resolve(fileName + PREVIOUS_SUFFIX));
+	}
+	
+	private static boolean isOption(final String option) {
+		switch (option) {
+			case THREADS_OPTION:
+			case LINK_OPTION:
+			case VERIFY_OPTION:
+			case RESUME_OPTION:
+			case APPEND_OPTION:
+			case PACK_OPTION:
+				return true;
+			default:
+				return false;
+		}
+	}
+	
+	private static boolean isValidOption(final String option, final String value) {
+		if (THREADS_OPTION.equals(option))
+			return Common.parsePositiveInt(value) > 0;
+		return value == null;
+	}
+	
+	// a DownloadTable column
 	private static int loadInputColumn(final String arg) {
 		switch (arg) {
 			case CommonPaths.ORIGINAL_DIR:
-				return 0;
+				return DownloadTable.ORIGINAL;
 			case CommonPaths.TEXT_ORIGINAL_DIR:
-				return 2;
+				return DownloadTable.TEXT_ORIGINAL;
 			case CommonPaths.TEXT_TOKENS_DIR:
-				return 3;
+				return DownloadTable.TEXT_TOKENS;
 			case CommonPaths.TEXT_POS_LEMMA_DIR:
-				return 4;
+				return DownloadTable.TEXT_POS_LEMMA;
 			case CommonPaths.TEXT_PARSE_DIR:
-				return 5;
+				return DownloadTable.TEXT_PARSE;
 			default:
 				System.err.print("Invalid input column: ");
 				System.err.println(arg);
@@ -122,113 +338,249 @@ public class Merge {
 		}
 	}
 	
-	private static HashSet<String> loadShortlist(final Path shortlistFile) throws IOException {
+	// filenames not occurring in the downloads cannot match and are skipped
+	private static BitSet loadShortlist(final Path shortlistFile, final DownloadTable downloads) throws IOException {
+		final BitSet result = new BitSet(downloads.nameCount());
 		try (final Stream<String> lines = Files.lines(shortlistFile, StandardCharsets.UTF_8)) {
-			return lines.collect(Collectors.toCollection(HashSet::new));
+			lines
+			.mapToInt(downloads::findName)
+			.filter(nameId -> nameId >= 0)
+			.forEachOrdered(result::set);
 		}
+		return result;
 	}
 	
-	private static void loadMetadata(final Path crawlDir, final Path urlsFile, final Path filesFile, final int inputColumn, final HashMap<String, ArrayList<DownloadInfo>> downloadsByUrl) throws IOException {
-		final HashMap<String, String> originalUrlMap = loadUrls(urlsFile);
-		try (final BufferedReader reader = Files.newBufferedReader(filesFile, StandardCharsets.UTF_8)) {
-			while (true) {
-				final String line = reader.readLine();
-				if (line == null)
-					break;
-				final String[] parts = Common.TAB_PATTERN.split(line);
-				final String originalFilename = parts[0];
-				final String url = originalUrlMap.getOrDefault(originalFilename, null);
-				if (url == null) {
-					System.err.println("file without URL: " + originalFilename);
-					continue;
-				}
-				ArrayList<DownloadInfo> list = downloadsByUrl.getOrDefault(url, null);
-				if (list == null) {
-					list = new ArrayList<>();
-					downloadsByUrl.put(url, list);
-				}
-				list.add(new DownloadInfo(crawlDir, originalFilename, parts[2], parts[3], parts[4], parts[5], parts[inputColumn]));
+	private static CrawlMetadata loadMetadata(final int crawlDir, final Path urlsFile, final Path filesFile) throws IOException {
+		final CrawlIndex index = new CrawlIndex();
+		index.loadUrls(urlsFile);
+		index.loadFiles(filesFile);
+		final CrawlMetadata result = new CrawlMetadata(index);
+		final int[] nameIds = new int[CrawlIndex.NAME_COLUMNS];
+		for (int line = 0; line < index.fileLineCount(); line++) {
+			for (int column = 0; column < CrawlIndex.NAME_COLUMNS; column++) {
+				nameIds[column] = index.getNameOfFileLine(line, column);
+				if (nameIds[column] < 0)
+					throw new IOException("Missing filename in line " + (line + 1) + " of " + filesFile);
 			}
+			final int urlId = index.getUrlOf(nameIds[CrawlIndex.ORIGINAL]);
+			if (urlId < 0) {
+				result.filesWithoutUrl.add(index.nameOf(nameIds[CrawlIndex.ORIGINAL]));
+				continue;
+			}
+			result.downloads.add(crawlDir, urlId, nameIds);
 		}
+		return result;
 	}
 	
-	private static HashMap<String, String> loadUrls(final Path urlsFile) throws IOException {
-		final HashMap<String, String> result = new HashMap<>();
-		try (final Stream<String> lines = Files.lines(urlsFile, StandardCharsets.UTF_8)) {
-			lines
-			.map(Common.TAB_PATTERN::split)
-			.forEachOrdered(parts -> result.put(parts[3], parts[0]));
-		}
+	private static int[] newRetainedNames(final DownloadTable downloads) {
+		final int[] result = new int[downloads.nameCount()];
+		Arrays.fill(result, -1);
 		return result;
 	}
 	
-	private static void determineDownloadsToRetain(final HashMap<String, ArrayList<DownloadInfo>> downloadsByUrl, final HashSet<String> shortlist, final ArrayList<DownloadInfo> retain, final ArrayList<DuplicationLogEntry> duplicationLog, final HashMap<String, DownloadInfo> retainedOriginalsMap, final HashMap<String, DownloadInfo> retainedTextExtractsMap, final HashMap<String, DownloadInfo> retainedLemmaFilesMap) throws IOException {
-		for (final ArrayList<DownloadInfo> list : downloadsByUrl.values()) {
-			final int listSize = list.size(); // > 0
-			if (listSize == 1) {
-				registerForRetention(list.get(0), retain, retainedOriginalsMap, retainedTextExtractsMap, retainedLemmaFilesMap);
+	private static void determineDownloadsToRetain(final DownloadTable downloads, final ArrayList<Path> crawlDirs, final int shortlistColumn, final BitSet shortlist, final int threads, final boolean verify, final boolean append, final BitSet retain, final ArrayList<DuplicationLogEntry> duplicationLog, final int[] retainedOriginals, final int[] retainedTextExtracts, final int[] retainedLemmaFiles) throws IOException {
+		final DownloadTable.UrlGroups groups = downloads.groupByUrl();
+		final int n = groups.count();
+		
+		final int[] selected = new int[n];
+		final String[] messages = new String[n];
+		// whether the URL has been merged before
+		final boolean[] mergedBefore = new boolean[n];
+		for (int i = 0; i < n; i++) {
+			final int groupSize = groups.size(i);
+			if (groupSize < 2)
+				continue;
+			final int mergedCount = append ? countMerged(downloads, groups, i) : 0;
+			mergedBefore[i] = (mergedCount > 0);
+			if (mergedCount == groupSize) {
+				// no new downloads
+				selected[i] = -1;
 				continue;
 			}
-			
-			final ArrayList<DownloadInfo> discarded = new ArrayList<>();
-			DownloadInfo result = findDownloadOnShortlist(list, shortlist);
-			final String message;
-			if (result == null) {
-				message = "last";
-				result = list.get(listSize - 1);
+			// the new downloads are selected from as if the URL had not been merged before
+			selected[i] = findDownloadOnShortlist(downloads, groups, i, mergedCount, shortlistColumn, shortlist);
+			if (selected[i] < 0) {
+				messages[i] = "last";
+				selected[i] = groups.get(i, groupSize - 1);
 			} else {
-				message = "on shortlist";
-			}
-			final DownloadInfo toRetain = result;
-			registerForRetention(toRetain, retain, retainedOriginalsMap, retainedTextExtractsMap, retainedLemmaFilesMap);
-			duplicationLog.add(new DuplicationLogEntry(toRetain.originalFile, message, discarded));
-			final ArrayList<DownloadInfo> shouldBeEqual = new ArrayList<>();
-			shouldBeEqual.add(toRetain);
-			for (final DownloadInfo downloadInfo : list) {
-				if (downloadInfo == toRetain)
+				messages[i] = "on shortlist";
+			}
+		}
+		
+		// reading the tokens files takes most of the time, so URLs are compared in parallel
+		final boolean[][] differing = new boolean[n][];
+		final int[][] equalRetained = new int[n][];
+		try (final WorkerPool workers = new WorkerPool(threads, 4 * threads)) {
+			for (int i = 0; i < n; i++) {
+				if (groups.size(i) < 2)
+					continue;
+				final int index = i;
+				if (mergedBefore[i])
+					workers.submit(() -> equalRetained[index] = findEqualRetainedTokenizations(downloads, crawlDirs, groups, index, selected[index], verify));
+				else
+					workers.submit(() -> differing[index] = findDifferingTokenizations(downloads, crawlDirs, groups, index, selected[index], verify));
+			}
+			workers.finish();
+		}
+		
+		for (int i = 0; i < n; i++) {
+			final int groupSize = groups.size(i);
+			if (groupSize == 0)
+				continue;
+			if (groupSize == 1) {
+				registerForRetention(downloads, crawlDirs, groups.get(i, 0), retain, retainedOriginals, retainedTextExtracts, retainedLemmaFiles);
+				continue;
+			}
+			if (mergedBefore[i]) {
+				retainNewTokenizations(downloads, crawlDirs, groups, i, messages[i], equalRetained[i], retain, duplicationLog, retainedOriginals, retainedTextExtracts, retainedLemmaFiles);
+				continue;
+			}
+			
+			final ArrayList<String> discarded = new ArrayList<>();
+			final int toRetain = selected[i];
+			registerForRetention(downloads, crawlDirs, toRetain, retain, retainedOriginals, retainedTextExtracts, retainedLemmaFiles);
+			duplicationLog.add(new DuplicationLogEntry(downloads.getName(toRetain, DownloadTable.ORIGINAL), messages[i], discarded));
+			final ArrayList<String> shouldBeEqual = new ArrayList<>();
+			shouldBeEqual.add(downloads.getName(toRetain, DownloadTable.ORIGINAL));
+			for (int j = 0; j < groupSize; j++) {
+				final int download = groups.get(i, j);
+				if (download == toRetain)
 					continue;
-				if (tokenizationsDiffer(toRetain, downloadInfo)) {
-					registerForRetention(downloadInfo, retain, retainedOriginalsMap, retainedTextExtractsMap, retainedLemmaFilesMap);
-					duplicationLog.add(new DuplicationLogEntry(downloadInfo.originalFile, "tokens differ", shouldBeEqual));
+				if (differing[i][j]) {
+					registerForRetention(downloads, crawlDirs, download, retain, retainedOriginals, retainedTextExtracts, retainedLemmaFiles);
+					duplicationLog.add(new DuplicationLogEntry(downloads.getName(download, DownloadTable.ORIGINAL), "tokens differ", shouldBeEqual));
 					continue;
 				}
-				discarded.add(downloadInfo);
+				discarded.add(downloads.getName(download, DownloadTable.ORIGINAL));
 			}
 		}
 	}
 	
-	private static DownloadInfo findDownloadOnShortlist(final ArrayList<DownloadInfo> downloadsList, final HashSet<String> shortlist) {
-		DownloadInfo result = null;
-		for (final DownloadInfo downloadInfo : downloadsList) {
-			if (onShortlist(downloadInfo, shortlist)) {
-				if (result == null) {
-					result = downloadInfo;
+	// the files merged before are kept; new files only if their tokenizations have not been merged or selected before
+	private static void retainNewTokenizations(final DownloadTable downloads, final ArrayList<Path> crawlDirs, final DownloadTable.UrlGroups groups, final int group, final String selectedMessage, final int[] equalRetained, final BitSet retain, final ArrayList<DuplicationLogEntry> duplicationLog, final int[] retainedOriginals, final int[] retainedTextExtracts, final int[] retainedLemmaFiles) {
+		// by the download retained instead
+		final HashMap<Integer, ArrayList<String>> discarded = new HashMap<>();
+		int lastMerged = -1;
+		for (int j = 0; j < groups.size(group); j++) {
+			final int download = groups.get(group, j);
+			if (downloads.getCrawlDir(download) == 0) {
+				registerForRetention(downloads, crawlDirs, download, retain, retainedOriginals, retainedTextExtracts, retainedLemmaFiles);
+				lastMerged = download;
+				continue;
+			}
+			if (equalRetained[j] < 0) {
+				registerForRetention(downloads, crawlDirs, download, retain, retainedOriginals, retainedTextExtracts, retainedLemmaFiles);
+				final ArrayList<String> shouldBeEqual = new ArrayList<>();
+				shouldBeEqual.add(downloads.getName(lastMerged, DownloadTable.ORIGINAL));
+				duplicationLog.add(new DuplicationLogEntry(downloads.getName(download, DownloadTable.ORIGINAL), "tokens differ", shouldBeEqual));
+				continue;
+			}
+			discarded.computeIfAbsent(equalRetained[j], k -> new ArrayList<>()).add(downloads.getName(download, DownloadTable.ORIGINAL));
+		}
+		for (final Entry<Integer, ArrayList<String>> entry : discarded.entrySet()) {
+			final int retained = entry.getKey().intValue();
+			final String message = (downloads.getCrawlDir(retained) == 0) ? "merged before" : selectedMessage;
+			duplicationLog.add(new DuplicationLogEntry(downloads.getName(retained, DownloadTable.ORIGINAL), message, entry.getValue()));
+		}
+	}
+	
+	// the downloads merged before (in the target directory) come first in their groups
+	private static int countMerged(final DownloadTable downloads, final DownloadTable.UrlGroups groups, final int group) {
+		int result = 0;
+		while (result < groups.size(group) && downloads.getCrawlDir(groups.get(group, result)) == 0)
+			result++;
+		return result;
+	}
+	
+	// -1 if none among the downloads from the given index on
+	private static int findDownloadOnShortlist(final DownloadTable downloads, final DownloadTable.UrlGroups groups, final int group, final int start, final int shortlistColumn, final BitSet shortlist) {
+		int result = -1;
+		for (int i = start; i < groups.size(group); i++) {
+			final int download = groups.get(group, i);
+			if (shortlist.get(downloads.getNameId(download, shortlistColumn))) {
+				if (result < 0) {
+					result = download;
 					continue;
 				}
 				System.err.print("Warning: duplicate in shortlist (");
-				System.err.print(result.filenameToMatchOnShortlist);
+				System.err.print(downloads.getName(result, shortlistColumn));
 				System.err.print(" and ");
-				System.err.print(downloadInfo.filenameToMatchOnShortlist);
+				System.err.print(downloads.getName(download, shortlistColumn));
 				System.err.println(')');
 			}
 		}
 		return result;
 	}
 	
-	private static boolean onShortlist(final DownloadInfo downloadInfo, final HashSet<String> shortlist) {
-		return shortlist.contains(downloadInfo.filenameToMatchOnShortlist);
+	private static void registerForRetention(final DownloadTable downloads, final ArrayList<Path> crawlDirs, final int toRetain, final BitSet retain, final int[] retainedOriginals, final int[] retainedTextExtracts, final int[] retainedLemmaFiles) {
+		retain.set(toRetain);
+		putOrComplain(retainedOriginals, downloads, crawlDirs, toRetain, DownloadTable.ORIGINAL);
+		putOrComplain(retainedTextExtracts, downloads, crawlDirs, toRetain, DownloadTable.TEXT_ORIGINAL);
+		putOrComplain(retainedLemmaFiles, downloads, crawlDirs, toRetain, DownloadTable.TEXT_POS_LEMMA);
 	}
 	
-	private static void registerForRetention(final DownloadInfo toRetain, final ArrayList<DownloadInfo> retain, final HashMap<String, DownloadInfo> retainedOriginalsMap, final HashMap<String, DownloadInfo> retainedTextExtractsMap, final HashMap<String, DownloadInfo> retainedLemmaFilesMap) {
-		retain.add(toRetain);
-		putOrComplain(retainedOriginalsMap, toRetain, toRetain.originalFile);
-		putOrComplain(retainedTextExtractsMap, toRetain, toRetain.extractFile);
-		putOrComplain(retainedLemmaFilesMap, toRetain, toRetain.lemmaFile);
+	// every download belongs to a single URL, so every tokens file is read only once for its fingerprint
+	private static boolean[] findDifferingTokenizations(final DownloadTable downloads, final ArrayList<Path> crawlDirs, final DownloadTable.UrlGroups groups, final int group, final int toRetain, final boolean verify) throws IOException {
+		final Path retainedTokensFile = tokensFilePath(downloads, crawlDirs, toRetain);
+		final TokenSequenceFingerprint retainedFingerprint = TokenSequenceFingerprint.ofTokenization(retainedTokensFile);
+		final boolean[] result = new boolean[groups.size(group)];
+		for (int i = 0; i < result.length; i++) {
+			final int download = groups.get(group, i);
+			if (download == toRetain)
+				continue;
+			final Path tokensFile = tokensFilePath(downloads, crawlDirs, download);
+			result[i] = !retainedFingerprint.equals(TokenSequenceFingerprint.ofTokenization(tokensFile)) || (verify && tokenizationsDiffer(retainedTokensFile, tokensFile));
+		}
+		return result;
 	}
 	
-	private static boolean tokenizationsDiffer(final DownloadInfo toRetain, final DownloadInfo other) throws IOException {
-		try (final BufferedReader reader1 = Files.newBufferedReader(tokensFilePath(toRetain), StandardCharsets.UTF_8)) {
-			try (final BufferedReader reader2 = Files.newBufferedReader(tokensFilePath(other), StandardCharsets.UTF_8)) {
+	/*
+	 * for every new download, the download retained instead: an equal download merged before
+	 * (in the target directory) or the selected new download; -1 if the new download is retained;
+	 * only the new downloads retained by the selection are compared with the downloads merged before
+	 */
+	private static int[] findEqualRetainedTokenizations(final DownloadTable downloads, final ArrayList<Path> crawlDirs, final DownloadTable.UrlGroups groups, final int group, final int toRetain, final boolean verify) throws IOException {
+		final int[] result = new int[groups.size(group)];
+		Arrays.fill(result, -1);
+		if (toRetain < 0)
+			return result;
+		final int mergedCount = countMerged(downloads, groups, group);
+		final TokenSequenceFingerprint[] mergedFingerprints = new TokenSequenceFingerprint[mergedCount];
+		for (int i = 0; i < mergedCount; i++)
+			mergedFingerprints[i] = TokenSequenceFingerprint.ofTokenization(tokensFilePath(downloads, crawlDirs, groups.get(group, i)));
+		
+		final Path retainedTokensFile = tokensFilePath(downloads, crawlDirs, toRetain);
+		final TokenSequenceFingerprint retainedFingerprint = TokenSequenceFingerprint.ofTokenization(retainedTokensFile);
+		final int retainedMerged = findEqualMergedTokenization(downloads, crawlDirs, groups, group, mergedFingerprints, retainedTokensFile, retainedFingerprint, verify);
+		for (int i = mergedCount; i < result.length; i++) {
+			final int download = groups.get(group, i);
+			if (download == toRetain) {
+				result[i] = retainedMerged;
+				continue;
+			}
+			final Path tokensFile = tokensFilePath(downloads, crawlDirs, download);
+			final TokenSequenceFingerprint fingerprint = TokenSequenceFingerprint.ofTokenization(tokensFile);
+			if (fingerprint.equals(retainedFingerprint) && !(verify && tokenizationsDiffer(retainedTokensFile, tokensFile)))
+				result[i] = (retainedMerged < 0) ? toRetain : retainedMerged;
+			else
+				result[i] = findEqualMergedTokenization(downloads, crawlDirs, groups, group, mergedFingerprints, tokensFile, fingerprint, verify);
+		}
+		return result;
+	}
+	
+	// an equal download merged before, or -1 if none
+	private static int findEqualMergedTokenization(final DownloadTable downloads, final ArrayList<Path> crawlDirs, final DownloadTable.UrlGroups groups, final int group, final TokenSequenceFingerprint[] mergedFingerprints, final Path tokensFile, final TokenSequenceFingerprint fingerprint, final boolean verify) throws IOException {
+		for (int j = 0; j < mergedFingerprints.length; j++) {
+			final int merged = groups.get(group, j);
+			if (fingerprint.equals(mergedFingerprints[j]) && !(verify && tokenizationsDiffer(tokensFilePath(downloads, crawlDirs, merged), tokensFile)))
+				return merged;
+		}
+		return -1;
+	}
+	
+	private static boolean tokenizationsDiffer(final Path tokensFile1, final Path tokensFile2) throws IOException {
+		try (final BufferedReader reader1 = Files.newBufferedReader(tokensFile1, StandardCharsets.UTF_8)) {
+			try (final BufferedReader reader2 = Files.newBufferedReader(tokensFile2, StandardCharsets.UTF_8)) {
 				while (true) {
 					final String line1 = reader1.readLine();
 					final String line2 = reader2.readLine();
@@ -246,11 +598,30 @@ public class Merge {
 		}
 	}
 
-	private static Path tokensFilePath(final DownloadInfo downloadInfo) {
-		return downloadInfo.base.resolve(CommonPaths.TEXT_DIR).resolve(CommonPaths.TEXT_TOKENS_DIR).resolve(downloadInfo.tokensFile);
+	private static Path tokensFilePath(final DownloadTable downloads, final ArrayList<Path> crawlDirs, final int download) {
+		return crawlDirs.get(downloads.getCrawlDir(download)).resolve(CommonPaths.TEXT_DIR).resolve(CommonPaths.TEXT_TOKENS_DIR).resolve(downloads.getName(download, DownloadTable.TEXT_TOKENS));
 	}
 	
-	private static void logDuplications(final ArrayList<DuplicationLogEntry> duplicationLog, final Path logFile) throws IOException {
+	// previousLogFile: null if there is no previous log to keep
+	private static void logDuplications(final ArrayList<DuplicationLogEntry> newEntries, final Path previousLogFile, final Path logFile) throws IOException {
+		final ArrayList<DuplicationLogEntry> duplicationLog = new ArrayList<>();
+		if (previousLogFile != null && Files.exists(previousLogFile)) {
+			final ColumnScanner columns = new ColumnScanner();
+			try (final BufferedReader reader = Files.newBufferedReader(previousLogFile, StandardCharsets.UTF_8)) {
+				while (true) {
+					final String line = reader.readLine();
+					if (line == null)
+						break;
+					columns.scan(line);
+					final ArrayList<String> other = new ArrayList<>();
+					for (int i = 2; i < columns.getColumnCount(); i++)
+						other.add(columns.getColumn(i));
+					duplicationLog.add(new DuplicationLogEntry(columns.getColumn(0), columns.getColumn(1), other));
+				}
+			}
+		}
+		duplicationLog.addAll(newEntries);
+		// a stable sort, so the previous entries come first
 		Collections.sort(duplicationLog, (x1, x2) -> x1.name.compareTo(x2.name));
 		
 		try (final BufferedWriter writer = Files.newBufferedWriter(logFile, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
@@ -258,30 +629,32 @@ public class Merge {
 				writer.append(x.name);
 				writer.append('\t');
 				writer.append(x.message);
-				for (final DownloadInfo duplikat : x.other)
-					writer.append('\t').append(duplikat.originalFile);
+				for (final String duplikat : x.other)
+					writer.append('\t').append(duplikat);
 				writer.append('\n');
 			}
 			writer.flush();
 		}
 	}
 	
-	private static void putOrComplain(final HashMap<String, DownloadInfo> targetMap, final DownloadInfo downloadInfo, final String filename) {
-		final DownloadInfo alt = targetMap.getOrDefault(filename, null);
-		if (alt == null) {
-			targetMap.put(filename, downloadInfo);
+	private static void putOrComplain(final int[] retainedNames, final DownloadTable downloads, final ArrayList<Path> crawlDirs, final int download, final int column) {
+		final int nameId = downloads.getNameId(download, column);
+		final int alt = retainedNames[nameId];
+		if (alt < 0) {
+			retainedNames[nameId] = download;
 			return;
 		}
 		System.err.println("File name conflict: There are at least two files with the same name to be copied into the same directory.");
 		System.err.print("Noticed in this file name: ");
-		System.err.println(filename);
+		System.err.println(downloads.nameOf(nameId));
 		System.err.println("appearing in (sub-directories of) at least these two crawler output directories:");
-		System.err.println(alt.base);
-		System.err.println(downloadInfo.base);
+		System.err.println(crawlDirs.get(downloads.getCrawlDir(alt)));
+		System.err.println(crawlDirs.get(downloads.getCrawlDir(download)));
 		System.exit(2);
 	}
 	
-	private static void copyFiles(final ArrayList<DownloadInfo> retain, final Path targetDir) throws IOException {
+	// false if some files could not be copied
+	private static boolean copyFiles(final MergeJournal journal, final DownloadTable downloads, final ArrayList<Path> crawlDirs, final BitSet retain, final Path targetDir, final int threads, final boolean link, final boolean append) throws IOException {
 		final Path targetOriginalDir = targetDir.resolve(CommonPaths.ORIGINAL_DIR);
 		final Path targetTextDir = targetDir.resolve(CommonPaths.TEXT_DIR);
 		final Path targetTextOriginalDir = targetTextDir.resolve(CommonPaths.TEXT_ORIGINAL_DIR);
@@ -290,49 +663,135 @@ public class Merge {
 		final Path targetTextParserInputDir = targetTextDir.resolve(CommonPaths.TEXT_PARSER_INPUT_DIR);
 		final Path targetTextParseDir = targetTextDir.resolve(CommonPaths.TEXT_PARSE_DIR);
 		
-		Files.createDirectory(targetOriginalDir);
-		Files.createDirectory(targetTextDir);
-		Files.createDirectory(targetTextOriginalDir);
-		Files.createDirectory(targetTextTokensDir);
-		Files.createDirectory(targetTextLemmaDir);
-		Files.createDirectory(targetTextParserInputDir);
-		Files.createDirectory(targetTextParseDir);
+		if (journal.isResumed() || append) {
+			Files.createDirectories(targetOriginalDir);
+			Files.createDirectories(targetTextOriginalDir);
+			Files.createDirectories(targetTextTokensDir);
+			Files.createDirectories(targetTextLemmaDir);
+			Files.createDirectories(targetTextParserInputDir);
+			Files.createDirectories(targetTextParseDir);
+		} else {
+			Files.createDirectory(targetOriginalDir);
+			Files.createDirectory(targetTextDir);
+			Files.createDirectory(targetTextOriginalDir);
+			Files.createDirectory(targetTextTokensDir);
+			Files.createDirectory(targetTextLemmaDir);
+			Files.createDirectory(targetTextParserInputDir);
+			Files.createDirectory(targetTextParseDir);
+		}
 		
-		for (final DownloadInfo downloadInfo : retain) {
-			final Path sourceOriginalDir = downloadInfo.base.resolve(CommonPaths.ORIGINAL_DIR);
-			final Path sourceTextDir = downloadInfo.base.resolve(CommonPaths.TEXT_DIR);
-			final Path sourceTextOriginalDir = sourceTextDir.resolve(CommonPaths.TEXT_ORIGINAL_DIR);
-			final Path sourceTextTokensDir = sourceTextDir.resolve(CommonPaths.TEXT_TOKENS_DIR);
-			final Path sourceTextLemmaDir = sourceTextDir.resolve(CommonPaths.TEXT_POS_LEMMA_DIR);
-			final Path sourceTextParserInputDir = sourceTextDir.resolve(CommonPaths.TEXT_PARSER_INPUT_DIR);
-			final Path sourceTextParseDir = sourceTextDir.resolve(CommonPaths.TEXT_PARSE_DIR);
-			
-			copy(sourceOriginalDir, targetOriginalDir, downloadInfo.originalFile);
-			copy(sourceTextOriginalDir, targetTextOriginalDir, downloadInfo.extractFile);
-			copy(sourceTextTokensDir, targetTextTokensDir, downloadInfo.tokensFile);
-			copy(sourceTextLemmaDir, targetTextLemmaDir, downloadInfo.lemmaFile);
-			copy(sourceTextParseDir, targetTextParseDir, downloadInfo.parsedFile);
-			
-			final Path sourceTextParserInputFile = sourceTextParserInputDir.resolve(downloadInfo.parsedFile);
-			if (Files.exists(sourceTextParserInputFile))
-				Files.copy(sourceTextParserInputFile, targetTextParserInputDir.resolve(downloadInfo.parsedFile));
+		// an interrupted copy batch may have left some of its files
+		try (final FileCopier copier = new FileCopier(threads, link, journal.isResumed())) {
+			int batch = 0;
+			int batchSize = 0;
+			int errors = 0;
+			for (int download = retain.nextSetBit(0); download >= 0; download = retain.nextSetBit(download + 1)) {
+				if (batchSize == COPY_BATCH_SIZE) {
+					errors = completeCopyBatch(journal, copier, batch, errors);
+					batch++;
+					batchSize = 0;
+				}
+				batchSize++;
+				if (journal.isCompleted(COPY_BATCH_STAGE + batch))
+					continue;
+				// files merged before are in place
+				if (append && downloads.getCrawlDir(download) == 0)
+					continue;
+				
+				final Path base = crawlDirs.get(downloads.getCrawlDir(download));
+				final Path sourceOriginalDir = base.resolve(CommonPaths.ORIGINAL_DIR);
+				final Path sourceTextDir = base.resolve(CommonPaths.TEXT_DIR);
+				final Path sourceTextOriginalDir = sourceTextDir.resolve(CommonPaths.TEXT_ORIGINAL_DIR);
+				final Path sourceTextTokensDir = sourceTextDir.resolve(CommonPaths.TEXT_TOKENS_DIR);
+				final Path sourceTextLemmaDir = sourceTextDir.resolve(CommonPaths.TEXT_POS_LEMMA_DIR);
+				final Path sourceTextParserInputDir = sourceTextDir.resolve(CommonPaths.TEXT_PARSER_INPUT_DIR);
+				final Path sourceTextParseDir = sourceTextDir.resolve(CommonPaths.TEXT_PARSE_DIR);
+				
+				final String parsedFile = downloads.getName(download, DownloadTable.TEXT_PARSE);
+				copy(copier, sourceOriginalDir, targetOriginalDir, downloads.getName(download, DownloadTable.ORIGINAL));
+				copy(copier, sourceTextOriginalDir, targetTextOriginalDir, downloads.getName(download, DownloadTable.TEXT_ORIGINAL));
+				copy(copier, sourceTextTokensDir, targetTextTokensDir, downloads.getName(download, DownloadTable.TEXT_TOKENS));
+				copy(copier, sourceTextLemmaDir, targetTextLemmaDir, downloads.getName(download, DownloadTable.TEXT_POS_LEMMA));
+				copy(copier, sourceTextParseDir, targetTextParseDir, parsedFile);
+				
+				copier.copyIfExists(sourceTextParserInputDir.resolve(parsedFile), targetTextParserInputDir.resolve(parsedFile));
+			}
+			if (batchSize > 0)
+				completeCopyBatch(journal, copier, batch, errors);
+			return copier.finish();
+		}
+	}
+	
+	// returns the number of errors so far; a batch with errors is not completed
+	private static int completeCopyBatch(final MergeJournal journal, final FileCopier copier, final int batch, final int errorsBefore) throws IOException {
+		final String stage = COPY_BATCH_STAGE + batch;
+		if (journal.isCompleted(stage))
+			return errorsBefore;
+		final int errors = copier.awaitCopies();
+		if (errors == errorsBefore)
+			journal.complete(stage);
+		return errors;
+	}
+	
+	// false if some files could not be copied; there is a single stage, as a pack file cannot be continued
+	private static boolean packFiles(final MergeJournal journal, final DownloadTable downloads, final ArrayList<Path> crawlDirs, final BitSet retain, final Path targetDir, final int threads) throws IOException {
+		if (journal.isCompleted(PACK_STAGE))
+			return true;
+		final Path targetTextDir = targetDir.resolve(CommonPaths.TEXT_DIR);
+		Files.createDirectories(targetTextDir);
+		
+		// the copier is closed first, so that no copy is still writing when the packs are closed
+		try (
+			final PackWriter originalPack = new PackWriter(targetDir.resolve(CommonPaths.ORIGINAL_DIR));
+			final PackWriter textOriginalPack = new PackWriter(targetTextDir.resolve(CommonPaths.TEXT_ORIGINAL_DIR));
+			final PackWriter textTokensPack = new PackWriter(targetTextDir.resolve(CommonPaths.TEXT_TOKENS_DIR));
+			final PackWriter textLemmaPack = new PackWriter(targetTextDir.resolve(CommonPaths.TEXT_POS_LEMMA_DIR));
+			final PackWriter textParserInputPack = new PackWriter(targetTextDir.resolve(CommonPaths.TEXT_PARSER_INPUT_DIR));
+			final PackWriter textParsePack = new PackWriter(targetTextDir.resolve(CommonPaths.TEXT_PARSE_DIR));
+			final FileCopier copier = new FileCopier(threads, false, false)
+		) {
+			for (int download = retain.nextSetBit(0); download >= 0; download = retain.nextSetBit(download + 1)) {
+				final Path base = crawlDirs.get(downloads.getCrawlDir(download));
+				final Path sourceTextDir = base.resolve(CommonPaths.TEXT_DIR);
+				
+				final String parsedFile = downloads.getName(download, DownloadTable.TEXT_PARSE);
+				copier.pack(base.resolve(CommonPaths.ORIGINAL_DIR).resolve(downloads.getName(download, DownloadTable.ORIGINAL)), originalPack);
+				copier.pack(sourceTextDir.resolve(CommonPaths.TEXT_ORIGINAL_DIR).resolve(downloads.getName(download, DownloadTable.TEXT_ORIGINAL)), textOriginalPack);
+				copier.pack(sourceTextDir.resolve(CommonPaths.TEXT_TOKENS_DIR).resolve(downloads.getName(download, DownloadTable.TEXT_TOKENS)), textTokensPack);
+				copier.pack(sourceTextDir.resolve(CommonPaths.TEXT_POS_LEMMA_DIR).resolve(downloads.getName(download, DownloadTable.TEXT_POS_LEMMA)), textLemmaPack);
+				copier.pack(sourceTextDir.resolve(CommonPaths.TEXT_PARSE_DIR).resolve(parsedFile), textParsePack);
+				
+				copier.packIfExists(sourceTextDir.resolve(CommonPaths.TEXT_PARSER_INPUT_DIR).resolve(parsedFile), textParserInputPack);
+			}
+			if (!copier.finish())
+				return false;
 		}
+		journal.complete(PACK_STAGE);
+		return true;
 	}
 	
-	private static void copy(final Path sourceDir, final Path targetDir, final String filename) throws IOException {
-		Files.copy(sourceDir.resolve(filename), targetDir.resolve(filename));
+	private static void copy(final FileCopier copier, final Path sourceDir, final Path targetDir, final String filename) throws IOException {
+		copier.copy(sourceDir.resolve(filename), targetDir.resolve(filename));
 	}
 	
-	private static void mergeMetadata(final ArrayList<Path> sourceFiles, final Path targetFile, final Set<String> retain, final int columnIndex) throws IOException {
-		try (final BufferedWriter writer = Files.newBufferedWriter(targetFile, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+	private static void mergeMetadata(final MergeJournal journal, final ArrayList<Path> sourceFiles, final Path targetDir, final String targetFileName, final DownloadTable downloads, final int[] retainedNames, final int columnIndex) throws IOException {
+		final String stage = METADATA_STAGE + targetFileName;
+		if (journal.isCompleted(stage))
+			return;
+		mergeMetadata(sourceFiles, targetDir.resolve(targetFileName), downloads, retainedNames, columnIndex);
+		journal.complete(stage);
+	}
+	
+	private static void mergeMetadata(final ArrayList<Path> sourceFiles, final Path targetFile, final DownloadTable downloads, final int[] retainedNames, final int columnIndex) throws IOException {
+		try (final BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(targetFile, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE), StandardCharsets.UTF_8), METADATA_BUFFER_SIZE)) {
 			for (final Path sourceFile : sourceFiles) {
-				try (final BufferedReader reader = Files.newBufferedReader(sourceFile, StandardCharsets.UTF_8)) {
+				try (final BufferedReader reader = new BufferedReader(new InputStreamReader(Files.newInputStream(sourceFile), StandardCharsets.UTF_8.newDecoder()), METADATA_BUFFER_SIZE)) {
 					while (true) {
 						final String line = reader.readLine();
 						if (line == null)
 							break;
-						final Optional<String> filename = Common.TAB_PATTERN.splitAsStream(line).skip(columnIndex).findFirst();
-						if (filename.isPresent() && retain.contains(filename.get()))
+						final String filename = ColumnScanner.column(line, columnIndex);
+						if (filename != null && isRetained(downloads, retainedNames, filename))
 							writer.append(line).append('\n');
 					}
 				}
@@ -341,36 +800,30 @@ public class Merge {
 		}
 	}
 	
+	private static boolean isRetained(final DownloadTable downloads, final int[] retainedNames, final String filename) {
+		final int nameId = downloads.findName(filename);
+		return nameId >= 0 && retainedNames[nameId] >= 0;
+	}
+	
+	private static class CrawlMetadata {
+		public final DownloadTable downloads;
+		public final ArrayList<String> filesWithoutUrl = new ArrayList<>();
+		
+		public CrawlMetadata(final CrawlIndex index) {
+			downloads = new DownloadTable(index);
+		}
+	}
+	
 	private static class DuplicationLogEntry {
 		public final String name;
 		public final String message;
-		public final ArrayList<DownloadInfo> other;
+		public final ArrayList<String> other;
 		
-		public DuplicationLogEntry(final String name, final String message, final ArrayList<DownloadInfo> other) {
+		public DuplicationLogEntry(final String name, final String message, final ArrayList<String> other) {
 			this.name = name;
 			this.message = message;
 			this.other = other;
 		}
 	}
 	
-	private static class DownloadInfo {
-		public final Path base;
-		public final String originalFile;
-		public final String extractFile;
-		public final String tokensFile;
-		public final String lemmaFile;
-		public final String parsedFile;
-		public final String filenameToMatchOnShortlist;
-		
-		public DownloadInfo(final Path base, final String originalFile, final String extractFile, final String tokensFile, final String lemmaFile, final String parsedFile, final String filenameToMatchOnShortlist) {
-			this.base = base;
-			this.originalFile = originalFile;
-			this.extractFile = extractFile;
-			this.tokensFile = tokensFile;
-			this.lemmaFile = lemmaFile;
-			this.parsedFile = parsedFile;
-			this.filenameToMatchOnShortlist = filenameToMatchOnShortlist;
-		}
-	}
-	
 }
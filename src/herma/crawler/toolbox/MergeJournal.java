@@ -0,0 +1,157 @@
+/* This Source Code Form is subject to the terms of the hermA Licence.
+ * If a copy of the licence was not distributed with this file, You have
+ * received this Source Code Form in a manner that does not comply with
+ * the terms of the licence.
+ */
+package herma.crawler.toolbox;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * The journal of a {@link Merge} in progress, kept in the output directory.
+ * <p>
+ * The first line of the journal describes the merge (its input and
+ * output directories and so on); every further line names a stage of
+ * the merge which has been completed. Every line is written to disk
+ * before the merge continues, so that a merge which has been interrupted
+ * can be resumed with the same arguments, skipping the completed stages.
+ * The journal is deleted when the merge has been completed.
+ * </p>
+ * <p>
+ * The methods of this class may be called by several threads.
+ * </p>
+ */
+public class MergeJournal {
+	
+	/**
+	 * The name of the journal file in the output directory:
+	 * {@value #FILE_NAME}
+	 */
+	public static final String FILE_NAME = "merge-journal.txt";
+	
+	private final Path pFile;
+	private final HashSet<String> pCompletedStages;
+	private final boolean pResumed;
+	
+	private MergeJournal(final Path file, final HashSet<String> completedStages, final boolean resumed) {
+		pFile = file;
+		pCompletedStages = completedStages;
+		pResumed = resumed;
+	}
+	
+	/**
+	 * Determines whether there is a journal in an output directory,
+	 * that is, whether a merge into the directory has been interrupted.
+	 * 
+	 * @param targetDir
+	 * (a {@link Path} locating) the output directory;
+	 * not {@code null}
+	 * 
+	 * @return
+	 * {@code true} if there is a journal,
+	 * {@code false} otherwise
+	 */
+	public static boolean exists(final Path targetDir) {
+		return Files.exists(targetDir.resolve(FILE_NAME));
+	}
+	
+	/**
+	 * Opens the journal of a merge into an output directory.
+	 * If there is no journal, a new one is started.
+	 * 
+	 * @param targetDir
+	 * (a {@link Path} locating) the output directory;
+	 * not {@code null}
+	 * 
+	 * @param description
+	 * the description of the merge;
+	 * a merge can only be resumed with the same description;
+	 * not {@code null}
+	 * 
+	 * @return
+	 * the journal,
+	 * or {@code null} if there is a journal of a merge with
+	 * a different description
+	 * 
+	 * @throws IOException
+	 * if an I/O error occurs
+	 */
+	public static MergeJournal open(final Path targetDir, final String description) throws IOException {
+		final Path file = targetDir.resolve(FILE_NAME);
+		final HashSet<String> completedStages = new HashSet<>();
+		if (!Files.exists(file)) {
+			final MergeJournal journal = new MergeJournal(file, completedStages, false);
+			journal.append(description);
+			return journal;
+		}
+		final List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+		if (lines.isEmpty() || !lines.get(0).equals(description))
+			return null;
+		completedStages.addAll(lines.subList(1, lines.size()));
+		return new MergeJournal(file, completedStages, true);
+	}
+	
+	/**
+	 * Determines whether the journal has been left by an earlier,
+	 * interrupted merge.
+	 * 
+	 * @return
+	 * {@code true} if the merge is resumed,
+	 * {@code false} if it is a new merge
+	 */
+	public boolean isResumed() {
+		return pResumed;
+	}
+	
+	/**
+	 * Determines whether a stage of the merge has been completed.
+	 * 
+	 * @param stage
+	 * the name of the stage (without line breaks);
+	 * not {@code null}
+	 * 
+	 * @return
+	 * {@code true} if the stage has been completed,
+	 * {@code false} otherwise
+	 */
+	public synchronized boolean isCompleted(final String stage) {
+		return pCompletedStages.contains(stage);
+	}
+	
+	/**
+	 * Records that a stage of the merge has been completed.
+	 * Returns after the record has been written to disk.
+	 * 
+	 * @param stage
+	 * the name of the stage (without line breaks);
+	 * not {@code null}
+	 * 
+	 * @throws IOException
+	 * if an I/O error occurs
+	 */
+	public synchronized void complete(final String stage) throws IOException {
+		append(stage);
+		pCompletedStages.add(stage);
+	}
+	
+	private void append(final String line) throws IOException {
+		Files.write(pFile, (line + '\n').getBytes(StandardCharsets.UTF_8), StandardOpenOption.CREATE, StandardOpenOption.APPEND, StandardOpenOption.WRITE, StandardOpenOption.DSYNC);
+	}
+	
+	/**
+	 * Deletes the journal after the merge has been completed.
+	 * 
+	 * @throws IOException
+	 * if an I/O error occurs
+	 */
+	public synchronized void delete() throws IOException {
+		Files.delete(pFile);
+	}
+	
+}
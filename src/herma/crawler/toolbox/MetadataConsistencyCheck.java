@@ -5,20 +5,19 @@
  */
 package herma.crawler.toolbox;
 
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.UncheckedIOException;
-import java.nio.charset.StandardCharsets;
 import java.nio.file.DirectoryStream;
 import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.HashSet;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
+import java.util.BitSet;
 
 import herma.crawler.toolbox.common.Common;
 import herma.crawler.toolbox.common.CommonPaths;
+import herma.crawler.toolbox.common.CrawlIndex;
+import herma.crawler.toolbox.common.MetadataCache;
+import herma.crawler.toolbox.common.PackedDirectories;
 
 public class MetadataConsistencyCheck {
 	
@@ -34,33 +33,24 @@ public class MetadataConsistencyCheck {
 		
 		long errorCount = 0L;
 		try {
-			System.out.println("Reading " + CommonPaths.URLS_FILE);
-			final HashSet<String> urlFilenames = readColumnAsSet(crawlDir.resolve(CommonPaths.URLS_FILE), 3);
+			System.out.println("Reading metadata");
+			final CrawlIndex index = MetadataCache.load(crawlDir);
 			
-			final HashSet<String> originalFilenames = new HashSet<>();
-			final HashSet<String> extractFilenames = new HashSet<>();
-			final HashSet<String> tokensFilenames = new HashSet<>();
-			final HashSet<String> posLemmaFilenames = new HashSet<>();
-			final HashSet<String> parseFilenames = new HashSet<>();
-			System.out.println("Reading " + CommonPaths.FILES_FILE);
-			readMetadata(crawlDir.resolve(CommonPaths.FILES_FILE), originalFilenames, extractFilenames, tokensFilenames, posLemmaFilenames, parseFilenames);
-			
-			System.out.println("Reading " + CommonPaths.MATCHES_FILE);
-			final HashSet<String> matchFilenames = readColumnAsSet(crawlDir.resolve(CommonPaths.MATCHES_FILE), 0);
+			final BitSet urlFilenames = index.getUrlNames();
 			
 			System.out.println();
 			System.out.println("Checking integrity within metadata");
 			System.out.println();
 			
-			errorCount += checkSetEquality(urlFilenames, CommonPaths.URLS_FILE, originalFilenames, CommonPaths.FILES_FILE);
-			errorCount += checkSetEquality(posLemmaFilenames, CommonPaths.FILES_FILE, matchFilenames, CommonPaths.MATCHES_FILE);
+			errorCount += checkSetEquality(index, urlFilenames, CommonPaths.URLS_FILE, index.getFileNames(CrawlIndex.ORIGINAL), CommonPaths.FILES_FILE);
+			errorCount += checkSetEquality(index, index.getFileNames(CrawlIndex.TEXT_POS_LEMMA), CommonPaths.FILES_FILE, index.getMatchNames(), CommonPaths.MATCHES_FILE);
 			
 			System.out.println();
 			System.out.println("Checking integrity with respect to saved files");
 			System.out.println();
 			
-			errorCount += checkBijectionToFiles(urlFilenames, crawlDir, CommonPaths.ORIGINAL_DIR, "", CommonPaths.URLS_FILE);
-			errorCount += checkBijectionToTextFiles(extractFilenames, tokensFilenames, posLemmaFilenames, parseFilenames, crawlDir, CommonPaths.TEXT_DIR, CommonPaths.FILES_FILE);
+			errorCount += checkBijectionToFiles(index, urlFilenames, crawlDir, CommonPaths.ORIGINAL_DIR, "", CommonPaths.URLS_FILE);
+			errorCount += checkBijectionToTextFiles(index, crawlDir, CommonPaths.TEXT_DIR, CommonPaths.FILES_FILE);
 		} catch (final IOException e) {
 			throw new UncheckedIOException(e);
 		}
@@ -77,75 +67,53 @@ public class MetadataConsistencyCheck {
 		}
 	}
 	
-	private static HashSet<String> readColumnAsSet(final Path file, final int index) throws IOException {
-		try (final Stream<String> lines = Files.lines(file, StandardCharsets.UTF_8)) {
-			return Common.selectColumn(lines, index).collect(Collectors.toCollection(HashSet::new));
-		}
-	}
-	
-	private static void readMetadata(final Path filesFile, final HashSet<String> originalFilenames, final HashSet<String> extractFilenames, final HashSet<String> tokensFilenames, final HashSet<String> posLemmaFilenames, final HashSet<String> parseFilenames) throws IOException {
-		try (final BufferedReader reader = Files.newBufferedReader(filesFile, StandardCharsets.UTF_8)) {
-			while (true) {
-				final String line = reader.readLine();
-				if (line == null)
-					break;
-				final String[] parts = Common.TAB_PATTERN.split(line);
-				originalFilenames.add(parts[0]);
-				addIfPresent(parts, 2, extractFilenames);
-				addIfPresent(parts, 3, tokensFilenames);
-				addIfPresent(parts, 4, posLemmaFilenames);
-				addIfPresent(parts, 5, parseFilenames);
-			}
-		}
-	}
-	
-	private static <T> void addIfPresent(final T[] parts, final int index, final HashSet<? super T> set) {
-		if (parts.length > index)
-			set.add(parts[index]);
-	}
-	
-	private static long checkSetEquality(final HashSet<String> set1, final String origin1, final HashSet<String> set2, final String origin2) {
+	private static long checkSetEquality(final CrawlIndex index, final BitSet set1, final String origin1, final BitSet set2, final String origin2) {
 		return
-		  checkSubset(set1, origin1, set2, origin2)
-		+ checkSubset(set2, origin2, set1, origin1);
+		  checkSubset(index, set1, origin1, set2, origin2)
+		+ checkSubset(index, set2, origin2, set1, origin1);
 	}
 	
-	private static long checkBijectionToTextFiles(final HashSet<String> extractFilenames, final HashSet<String> tokensFilenames, final HashSet<String> posLemmaFilenames, final HashSet<String> parseFilenames, final Path crawlDir, final String subdir, final String metadataLocation) throws IOException {
+	private static long checkBijectionToTextFiles(final CrawlIndex index, final Path crawlDir, final String subdir, final String metadataLocation) throws IOException {
 		final Path txtDir = crawlDir.resolve(subdir);
 		final String fileLocationPrefix = subdir + '/';
 		return
-		  checkBijectionToFiles(extractFilenames, txtDir, CommonPaths.TEXT_ORIGINAL_DIR, fileLocationPrefix, metadataLocation)
-		+ checkBijectionToFiles(tokensFilenames, txtDir, CommonPaths.TEXT_TOKENS_DIR, fileLocationPrefix, metadataLocation)
-		+ checkBijectionToFiles(posLemmaFilenames, txtDir, CommonPaths.TEXT_POS_LEMMA_DIR, fileLocationPrefix, metadataLocation)
-		+ checkBijectionToFiles(parseFilenames, txtDir, CommonPaths.TEXT_PARSE_DIR, fileLocationPrefix, metadataLocation);
+		  checkBijectionToFiles(index, index.getFileNames(CrawlIndex.TEXT_ORIGINAL), txtDir, CommonPaths.TEXT_ORIGINAL_DIR, fileLocationPrefix, metadataLocation)
+		+ checkBijectionToFiles(index, index.getFileNames(CrawlIndex.TEXT_TOKENS), txtDir, CommonPaths.TEXT_TOKENS_DIR, fileLocationPrefix, metadataLocation)
+		+ checkBijectionToFiles(index, index.getFileNames(CrawlIndex.TEXT_POS_LEMMA), txtDir, CommonPaths.TEXT_POS_LEMMA_DIR, fileLocationPrefix, metadataLocation)
+		+ checkBijectionToFiles(index, index.getFileNames(CrawlIndex.TEXT_PARSE), txtDir, CommonPaths.TEXT_PARSE_DIR, fileLocationPrefix, metadataLocation);
 	}
 	
-	private static long checkBijectionToFiles(final HashSet<String> filenames, final Path dir, String subdir, String fileLocationPrefix, String metadataLocation) throws IOException {
-		return checkBijectionToFiles(dir.resolve(subdir), fileLocationPrefix + subdir, filenames, metadataLocation);
+	private static long checkBijectionToFiles(final CrawlIndex index, final BitSet filenames, final Path dir, String subdir, String fileLocationPrefix, String metadataLocation) throws IOException {
+		return checkBijectionToFiles(index, dir.resolve(subdir), fileLocationPrefix + subdir, filenames, metadataLocation);
 	}
 	
-	private static long checkBijectionToFiles(final Path dir, final String dirname, final HashSet<String> filenames, final String metadataLocation) throws IOException {
+	private static long checkBijectionToFiles(final CrawlIndex index, final Path dir, final String dirname, final BitSet filenames, final String metadataLocation) throws IOException {
 		long errorCount = 0L;
-		final HashSet<String> existingFiles = new HashSet<>();
-		try (final DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
-			for (final Path file : files) {
-				final String filename = file.getFileName().toString();
-				existingFiles.add(filename);
-				if (!filenames.contains(filename)) {
-					logMissingItem(filename, dirname, metadataLocation);
-					errorCount++;
+		final BitSet existingFiles = new BitSet();
+		// a packed directory is listed by reading the index of its pack file
+		try (final PackedDirectories packs = new PackedDirectories()) {
+			try (final DirectoryStream<Path> files = Files.newDirectoryStream(packs.open(dir))) {
+				for (final Path file : files) {
+					final String filename = file.getFileName().toString();
+					final int nameId = index.findName(filename);
+					if (nameId >= 0)
+						existingFiles.set(nameId);
+					if (nameId < 0 || !filenames.get(nameId)) {
+						logMissingItem(filename, dirname, metadataLocation);
+						errorCount++;
+					}
 				}
 			}
 		}
 		
-		return errorCount + checkSubset(filenames, metadataLocation, existingFiles, dirname);
+		return errorCount + checkSubset(index, filenames, metadataLocation, existingFiles, dirname);
 	}
 	
-	private static long checkSubset(final HashSet<String> subset, final String subsetOrigin, final HashSet<String> superset, final String supersetOrigin) {
+	private static long checkSubset(final CrawlIndex index, final BitSet subset, final String subsetOrigin, final BitSet superset, final String supersetOrigin) {
 		long errorCount = 0L;
-		for (final String str1 : subset) {
-			if (!superset.contains(str1)) {
-				logMissingItem(str1, subsetOrigin, supersetOrigin);
+		for (int nameId = subset.nextSetBit(0); nameId >= 0; nameId = subset.nextSetBit(nameId + 1)) {
+			if (!superset.get(nameId)) {
+				logMissingItem(index.nameOf(nameId), subsetOrigin, supersetOrigin);
 				errorCount++;
 			}
 		}
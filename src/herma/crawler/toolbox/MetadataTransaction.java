@@ -0,0 +1,161 @@
+/* This Source Code Form is subject to the terms of the hermA Licence.
+ * If a copy of the licence was not distributed with this file, You have
+ * received this Source Code Form in a manner that does not comply with
+ * the terms of the licence.
+ */
+package herma.crawler.toolbox;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.function.Predicate;
+
+import herma.crawler.toolbox.common.ColumnScanner;
+import herma.crawler.toolbox.common.WorkerPool;
+
+/**
+ * Deletes lines from several web crawler metadata files together
+ * (like {@link FromMetadataFileDeletion#deleteFromMetaFile(Path, Predicate)}
+ * for each of them).
+ * <p>
+ * The remaining lines of every metadata file are first written to
+ * a temp file in the same directory (<em>staged</em>), either by the
+ * calling thread or in the background, so that independent metadata
+ * files can be rewritten in parallel. The metadata files are only
+ * replaced by {@link #commit()}, after all of them have been staged
+ * successfully; if any error occurs before, all metadata files are
+ * left unchanged. Staged versions which have not been committed are
+ * deleted by {@link #close()}.
+ * </p>
+ * <p>
+ * This class is not thread-safe; the {@link Predicate}s passed to
+ * {@link #stageInBackground(Path, Predicate)} are called by other threads.
+ * </p>
+ */
+public class MetadataTransaction implements AutoCloseable {
+	
+	private final WorkerPool pWorkers;
+	private final ArrayList<Path> pMetafiles;
+	private final ArrayList<Path> pTempFiles;
+	
+	/**
+	 * Creates a {@link MetadataTransaction}.
+	 * 
+	 * @param threads
+	 * the number of metadata files that may be staged in the background
+	 * at the same time;
+	 * if less than 2, they are staged by the calling thread
+	 */
+	public MetadataTransaction(final int threads) {
+		pWorkers = new WorkerPool(threads, threads);
+		pMetafiles = new ArrayList<>();
+		pTempFiles = new ArrayList<>();
+	}
+	
+	/**
+	 * Stages the deletion of lines from a metadata file
+	 * before this method returns.
+	 * <p>
+	 * {@link Predicate#test(Object)}
+	 * is called for each line of the metadata file,
+	 * scanned by a {@link ColumnScanner},
+	 * and the line is deleted if the method
+	 * returns {@code true}.
+	 * </p>
+	 * 
+	 * @param metafile
+	 * (a {@link Path} locating) the metadata file,
+	 * which must not have been staged before;
+	 * not {@code null}
+	 * 
+	 * @param deletionDecision
+	 * a {@link Predicate};
+	 * not {@code null}
+	 * 
+	 * @throws IOException
+	 * if an I/O error occurs
+	 */
+	public void stage(final Path metafile, final Predicate<? super ColumnScanner> deletionDecision) throws IOException {
+		addStaged(metafile, FromMetadataFileDeletion.writeFilteredCopy(metafile, deletionDecision));
+	}
+	
+	/**
+	 * Stages the deletion of lines from a metadata file
+	 * like {@link #stage(Path, Predicate)}, but possibly
+	 * after this method has returned.
+	 * 
+	 * @param metafile
+	 * (a {@link Path} locating) the metadata file,
+	 * which must not have been staged before;
+	 * not {@code null}
+	 * 
+	 * @param deletionDecision
+	 * a {@link Predicate}, which is not changed
+	 * until {@link #commit()} has returned;
+	 * not {@code null}
+	 * 
+	 * @throws IOException
+	 * if the metadata file is staged by the calling thread
+	 * and an I/O error occurs; other errors are thrown by {@link #commit()}
+	 */
+	public void stageInBackground(final Path metafile, final Predicate<? super ColumnScanner> deletionDecision) throws IOException {
+		pWorkers.submit(() -> stage(metafile, deletionDecision));
+	}
+	
+	private void addStaged(final Path metafile, final Path tempFile) {
+		synchronized (pMetafiles) {
+			pMetafiles.add(metafile);
+			pTempFiles.add(tempFile);
+		}
+	}
+	
+	/**
+	 * Waits for all metadata files to be staged and replaces them
+	 * by their staged versions, in the order of staging.
+	 * <p>
+	 * Replacing a metadata file is a single rename in its directory,
+	 * so that the metadata files are only out of sync if renaming fails
+	 * (which is reported).
+	 * </p>
+	 * 
+	 * @throws IOException
+	 * if an I/O error occurs
+	 */
+	public void commit() throws IOException {
+		pWorkers.finish();
+		synchronized (pMetafiles) {
+			while (!pMetafiles.isEmpty()) {
+				FromMetadataFileDeletion.replace(pMetafiles.get(0), pTempFiles.get(0));
+				pMetafiles.remove(0);
+				pTempFiles.remove(0);
+			}
+		}
+	}
+	
+	/**
+	 * Waits for all metadata files to be staged and deletes the staged
+	 * versions which have not been committed, leaving those metadata
+	 * files unchanged.
+	 * Errors staging metadata files in the background are not thrown
+	 * (they are thrown by {@link #commit()}).
+	 * 
+	 * @throws IOException
+	 * if an I/O error occurs while deleting a staged version
+	 */
+	@Override
+	public void close() throws IOException {
+		// metadata files being staged are only added when they have been written
+		pWorkers.await();
+		pWorkers.close();
+		final ArrayList<Path> tempFiles;
+		synchronized (pMetafiles) {
+			tempFiles = new ArrayList<>(pTempFiles);
+			pMetafiles.clear();
+			pTempFiles.clear();
+		}
+		for (final Path tempFile : tempFiles)
+			Files.deleteIfExists(tempFile);
+	}
+	
+}
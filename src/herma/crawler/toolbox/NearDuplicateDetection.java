@@ -0,0 +1,251 @@
+/* This Source Code Form is subject to the terms of the hermA Licence.
+ * If a copy of the licence was not distributed with this file, You have
+ * received this Source Code Form in a manner that does not comply with
+ * the terms of the licence.
+ */
+package herma.crawler.toolbox;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+import herma.crawler.toolbox.common.WorkerPool;
+
+/**
+ * Finds files in the
+ * {@link herma.crawler.toolbox.common.CommonPaths#TEXT_TOKENS_DIR}
+ * sub-directories of the text directories of one or more
+ * web crawler output directories with similar,
+ * but not necessarily equal token sequences.
+ * <p>
+ * Every token sequence (ignoring sentence boundaries) is turned into
+ * the set of its shingles (sequences of {@value #SHINGLE_SIZE}
+ * consecutive tokens). The similarity of two files is the Jaccard
+ * similarity of their shingle sets (the size of the intersection
+ * divided by the size of the union), which is estimated from MinHash
+ * signatures with {@value #SIGNATURE_LENGTH} hash functions.
+ * Candidate pairs are found by locality-sensitive hashing:
+ * the signatures are divided into bands, and only files agreeing
+ * in all values of at least one band are compared.
+ * Within a group of files agreeing in a band, each file is only
+ * compared with one file of the group, so the number of comparisons
+ * is at most the number of files times the number of bands
+ * rather than the square of the number of files.
+ * </p>
+ * <p>
+ * Files whose estimated similarity reaches the threshold are put into
+ * the same cluster, and clusters sharing a file are joined. A cluster
+ * may therefore contain files that are less similar to each other than
+ * the threshold, as long as they are connected by a chain of
+ * sufficiently similar files.
+ * </p>
+ */
+public class NearDuplicateDetection {
+	
+	/**
+	 * The number of consecutive tokens forming a shingle:
+	 * {@value #SHINGLE_SIZE}
+	 */
+	public static final int SHINGLE_SIZE = 5;
+	
+	/**
+	 * The number of hash functions (values) of a MinHash signature:
+	 * {@value #SIGNATURE_LENGTH}
+	 */
+	public static final int SIGNATURE_LENGTH = 128;
+	
+	private static final long[] SEEDS = createSeeds();
+	
+	/**
+	 * Finds clusters of files with similar token sequences.
+	 * 
+	 * @param tokenFiles
+	 * the tokens files;
+	 * not {@code null}
+	 * 
+	 * @param threshold
+	 * the minimum estimated Jaccard similarity of two files
+	 * to be considered near-duplicates;
+	 * greater than 0 and at most 1
+	 * 
+	 * @param threads
+	 * the number of threads reading the files
+	 * 
+	 * @return
+	 * the clusters (lists of names returned by {@link CrawlFiles#nameOf(Path)});
+	 * not {@code null}
+	 * 
+	 * @throws IOException
+	 * if an I/O error occurs
+	 */
+	public static ArrayList<ArrayList<String>> findNearDuplicates(final CrawlFiles tokenFiles, final double threshold, final int threads) throws IOException {
+		final ArrayList<Path> files = new ArrayList<>();
+		tokenFiles.forEach(1, files::add);
+		
+		final int n = files.size();
+		final int[][] signatures = new int[n][];
+		try (final WorkerPool workers = new WorkerPool(threads, 4 * threads)) {
+			for (int i = 0; i < n; i++) {
+				final int index = i;
+				workers.submit(() -> signatures[index] = signature(files.get(index)));
+			}
+			workers.finish();
+		}
+		
+		final int rows = rowsPerBand(threshold);
+		final int[] parents = new int[n];
+		for (int i = 0; i < n; i++)
+			parents[i] = i;
+		for (int band = 0; band < SIGNATURE_LENGTH / rows; band++)
+			compareCandidates(signatures, band * rows, rows, threshold, parents);
+		
+		final int[] clusterSizes = new int[n];
+		for (int i = 0; i < n; i++)
+			clusterSizes[find(parents, i)]++;
+		final HashMap<Integer, ArrayList<String>> clusters = new HashMap<>();
+		for (int i = 0; i < n; i++) {
+			final int root = parents[i]; // fully compressed by now
+			if (clusterSizes[root] > 1)
+				clusters.computeIfAbsent(root, k -> new ArrayList<>(clusterSizes[root])).add(tokenFiles.nameOf(files.get(i)));
+		}
+		return new ArrayList<>(clusters.values());
+	}
+	
+	/*
+	 * With b bands of r rows, two files with similarity s become
+	 * candidates with probability 1 - (1 - s^r)^b, which rises steeply
+	 * around (1/b)^(1/r). The number of rows is chosen as large as possible
+	 * (to keep the number of candidates small) while keeping this point
+	 * at or below the threshold (to miss few near-duplicates).
+	 */
+	private static int rowsPerBand(final double threshold) {
+		int result = 1;
+		for (int rows = 2; rows <= SIGNATURE_LENGTH; rows *= 2) {
+			final int bands = SIGNATURE_LENGTH / rows;
+			if (Math.pow(1.0 / bands, 1.0 / rows) > threshold)
+				break;
+			result = rows;
+		}
+		return result;
+	}
+	
+	private static void compareCandidates(final int[][] signatures, final int bandStart, final int rows, final double threshold, final int[] parents) {
+		final int n = signatures.length;
+		// buckets are linked lists of file indices: heads by band hash, successors in next
+		final HashMap<Long, Integer> heads = new HashMap<>();
+		final int[] next = new int[n];
+		for (int i = 0; i < n; i++) {
+			final Integer head = heads.put(bandHash(signatures[i], bandStart, rows), i);
+			next[i] = (head == null) ? -1 : head.intValue();
+		}
+		
+		// every file is only compared with the first file of its bucket, so that a bucket of k files
+		// (such as many copies of the same boilerplate page) costs O(k) rather than O(k^2) comparisons
+		for (final Integer head : heads.values()) {
+			final int representative = head.intValue();
+			for (int j = next[representative]; j >= 0; j = next[j]) {
+				final int root1 = find(parents, representative);
+				final int root2 = find(parents, j);
+				if (root1 == root2)
+					continue;
+				if (estimateSimilarity(signatures[representative], signatures[j]) >= threshold)
+					parents[root2] = root1;
+			}
+		}
+	}
+	
+	private static int find(final int[] parents, final int index) {
+		int root = index;
+		while (parents[root] != root)
+			root = parents[root];
+		// path compression
+		int i = index;
+		while (parents[i] != root) {
+			final int parent = parents[i];
+			parents[i] = root;
+			i = parent;
+		}
+		return root;
+	}
+	
+	private static long bandHash(final int[] signature, final int bandStart, final int rows) {
+		long hash = bandStart;
+		for (int i = bandStart; i < bandStart + rows; i++)
+			hash = mix(hash * 31L + signature[i]);
+		return hash;
+	}
+	
+	private static double estimateSimilarity(final int[] signature1, final int[] signature2) {
+		int equal = 0;
+		for (int i = 0; i < SIGNATURE_LENGTH; i++)
+			if (signature1[i] == signature2[i])
+				equal++;
+		return (double) equal / SIGNATURE_LENGTH;
+	}
+	
+	private static int[] signature(final Path tokensFile) throws IOException {
+		final int[] result = new int[SIGNATURE_LENGTH];
+		Arrays.fill(result, -1); // the largest value when compared as unsigned integers
+		
+		final long[] window = new long[SHINGLE_SIZE];
+		int tokenCount = 0;
+		try (final BufferedReader reader = Files.newBufferedReader(tokensFile, StandardCharsets.UTF_8)) {
+			while (true) {
+				final String line = reader.readLine();
+				if (line == null)
+					break;
+				if ("".equals(line))
+					continue;
+				window[tokenCount % SHINGLE_SIZE] = mix(line.hashCode());
+				tokenCount++;
+				if (tokenCount >= SHINGLE_SIZE)
+					addShingle(result, shingleHash(window, tokenCount, SHINGLE_SIZE));
+			}
+		}
+		// token sequences shorter than a shingle form a single shingle
+		if (tokenCount < SHINGLE_SIZE)
+			addShingle(result, shingleHash(window, tokenCount, tokenCount));
+		return result;
+	}
+	
+	private static long shingleHash(final long[] window, final int tokenCount, final int length) {
+		long hash = length;
+		for (int i = tokenCount - length; i < tokenCount; i++)
+			hash = mix(hash * 31L + window[i % SHINGLE_SIZE]);
+		return hash;
+	}
+	
+	private static void addShingle(final int[] signature, final long shingleHash) {
+		for (int i = 0; i < SIGNATURE_LENGTH; i++) {
+			final int value = (int) (mix(shingleHash ^ SEEDS[i]) >>> 32);
+			if (Integer.compareUnsigned(value, signature[i]) < 0)
+				signature[i] = value;
+		}
+	}
+	
+	private static long[] createSeeds() {
+		final long[] result = new long[SIGNATURE_LENGTH];
+		long seed = 0L;
+		for (int i = 0; i < SIGNATURE_LENGTH; i++) {
+			seed += 0x9E3779B97F4A7C15L;
+			result[i] = mix(seed);
+		}
+		return result;
+	}
+	
+	// the finalization step of MurmurHash3
+	private static long mix(long value) {
+		value ^= value >>> 33;
+		value *= 0xFF51AFD7ED558CCDL;
+		value ^= value >>> 33;
+		value *= 0xC4CEB9FE1A85EC53L;
+		value ^= value >>> 33;
+		return value;
+	}
+	
+}
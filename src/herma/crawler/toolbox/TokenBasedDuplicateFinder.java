@@ -10,66 +10,165 @@ import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.UncheckedIOException;
 import java.nio.charset.StandardCharsets;
-import java.nio.file.DirectoryStream;
 import java.nio.file.FileSystem;
 import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
 
 import herma.crawler.toolbox.common.Common;
 import herma.crawler.toolbox.common.CommonPaths;
+import herma.crawler.toolbox.common.ExternalLineSorter;
+import herma.crawler.toolbox.common.WorkerPool;
 
 public class TokenBasedDuplicateFinder {
 	
+	private static final String FINGERPRINT_OPTION = "fingerprint";
+	private static final String STATISTICS_OPTION = "statistics";
+	private static final String THREADS_OPTION = "threads";
+	private static final String JACCARD_OPTION = "jaccard";
+	private static final String INDEX_OPTION = "index";
+	private static final String MEMORY_OPTION = "memory";
+	private static final String BYTES_OPTION = "bytes";
+	
+	private static final String FINGERPRINT_INDEX_FILE_NAME = "token-fingerprints.txt";
+	
 	public static void main(final String[] args) {
-		if (args.length != 2) {
-			System.err.println("Invalid number of command line arguments.");
-			System.err.println("Expecting two arguments:");
-			System.err.println("crawler output directory");
-			System.err.println("output file");
+		if (args.length < 2) {
+			printUsage();
 			System.exit(1);
 			return;
 		}
 		
-		final FileSystem fs = FileSystems.getDefault();
+		boolean fingerprint = false;
+		boolean statistics = false;
+		boolean index = false;
+		int threads = 1;
+		double jaccardThreshold = 0.0;
+		long memoryBudget = 0L;
+		String bytesDirName = null;
+		// arguments not named like an option are paths
+		final ArrayList<String> pathArgs = new ArrayList<>();
+		for (final String arg : args) {
+			final String option = Common.optionName(arg);
+			final String value = Common.optionValue(arg);
+			if (!isOption(option)) {
+				pathArgs.add(arg);
+				continue;
+			}
+			if (!isValidOption(option, value)) {
+				System.err.print("Invalid option: ");
+				System.err.println(arg);
+				printUsage();
+				System.exit(1);
+				return;
+			}
+			switch (option) {
+				case FINGERPRINT_OPTION:
+					fingerprint = true;
+					break;
+				case STATISTICS_OPTION:
+					statistics = true;
+					break;
+				case INDEX_OPTION:
+					index = true;
+					fingerprint = true;
+					break;
+				case THREADS_OPTION:
+					threads = Common.parsePositiveInt(value);
+					break;
+				case JACCARD_OPTION:
+					jaccardThreshold = parseThreshold(value);
+					break;
+				case MEMORY_OPTION:
+					memoryBudget = Common.parsePositiveInt(value) * 1024L * 1024L;
+					fingerprint = true;
+					break;
+				case BYTES_OPTION:
+					bytesDirName = value;
+					break;
+			}
+		}
+		if (pathArgs.size() < 2) {
+			printUsage();
+			System.exit(1);
+			return;
+		}
+		final boolean nearDuplicates = (jaccardThreshold > 0.0);
+		final boolean identicalFiles = (bytesDirName != null);
+		if ((fingerprint ? 1 : 0) + (statistics ? 1 : 0) + (nearDuplicates ? 1 : 0) + (identicalFiles ? 1 : 0) > 1) {
+			System.err.println("The options \"" + FINGERPRINT_OPTION + "\" (or \"" + INDEX_OPTION + "\" or \"" + MEMORY_OPTION + "\"), \"" + STATISTICS_OPTION + "\", \"" + JACCARD_OPTION + "\" and \"" + BYTES_OPTION + "\" cannot be combined.");
+			System.exit(1);
+			return;
+		}
+		if (index && memoryBudget > 0L) {
+			System.err.println("The options \"" + INDEX_OPTION + "\" and \"" + MEMORY_OPTION + "\" cannot be combined.");
+			System.exit(1);
+			return;
+		}
 		
-		final Path crawlDir = Common.loadPath(fs, args[0]);
-		final Path outputFile = Common.loadPath(fs, args[1]);
+		final FileSystem fs = FileSystems.getDefault();
 		
-		final Path tokenFilesDir = crawlDir.resolve(CommonPaths.TEXT_DIR).resolve(CommonPaths.TEXT_TOKENS_DIR);
+		final ArrayList<Path> crawlDirs = new ArrayList<>(pathArgs.size() - 1);
+		for (final String pathArg : pathArgs.subList(0, pathArgs.size() - 1))
+			crawlDirs.add(Common.loadPath(fs, pathArg));
+		final Path outputFile = Common.loadPath(fs, pathArgs.get(pathArgs.size() - 1));
 		
-		final HashMap<HashableTokenSequence, ArrayList<String>> candidates = new HashMap<>();
+		final ArrayList<Path> tokenFilesDirs = new ArrayList<>(crawlDirs.size());
+		for (final Path crawlDir : crawlDirs)
+			tokenFilesDirs.add(crawlDir.resolve(CommonPaths.TEXT_DIR).resolve(CommonPaths.TEXT_TOKENS_DIR));
 		
-		try {
-			final ArrayList<String> temp = new ArrayList<>();
-			try (final DirectoryStream<Path> files = Files.newDirectoryStream(tokenFilesDir)) {
-				for (final Path file : files) {
-					final HashableTokenSequence key = new HashableTokenSequence(getTokenSequence(file, temp));
-					ArrayList<String> list = candidates.getOrDefault(key, null);
-					if (list == null) {
-						list = new ArrayList<>();
-						candidates.put(key, list);
-					}
-					list.add(file.getFileName().toString());
+		try (final CrawlFiles tokenFiles = new CrawlFiles(tokenFilesDirs)) {
+			if (memoryBudget > 0L) {
+				findDuplicatesWithBoundedMemory(tokenFiles, threads, memoryBudget, outputFile);
+				return;
+			}
+			
+			final ArrayList<ArrayList<String>> groups;
+			if (identicalFiles) {
+				final ArrayList<Path> bytesDirs = new ArrayList<>(crawlDirs.size());
+				for (final Path crawlDir : crawlDirs)
+					bytesDirs.add(bytesDir(crawlDir, bytesDirName));
+				try (final CrawlFiles bytesFiles = new CrawlFiles(bytesDirs)) {
+					groups = IdenticalFileDetection.findIdenticalFiles(bytesFiles, threads);
 				}
+			} else if (nearDuplicates) {
+				groups = NearDuplicateDetection.findNearDuplicates(tokenFiles, jaccardThreshold, threads);
+			} else if (index) {
+				final ArrayList<Path> indexFiles = new ArrayList<>(crawlDirs.size());
+				for (final Path crawlDir : crawlDirs)
+					indexFiles.add(crawlDir.resolve(FINGERPRINT_INDEX_FILE_NAME));
+				groups = findDuplicatesByFingerprint(tokenFiles, threads, indexFiles);
+			} else if (fingerprint) {
+				groups = findDuplicatesByFingerprint(tokenFiles, threads);
+			} else {
+				groups = findDuplicates(tokenFiles, threads, statistics ? new HashingStatistics() : null);
 			}
 			
 			try (final BufferedWriter writer = Files.newBufferedWriter(outputFile, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
-				for (final ArrayList<String> list : candidates.values()) {
-					if (list.size() > 1) {
-						boolean first = true;
-						for (final String filename : list) {
-							if (first)
-								first = false;
-							else
-								writer.append('\t');
-							writer.append(filename);
-						}
-						writer.append('\n');
+				for (final ArrayList<String> list : sortGroups(groups)) {
+					boolean first = true;
+					for (final String filename : list) {
+						if (first)
+							first = false;
+						else
+							writer.append('\t');
+						writer.append(filename);
 					}
+					writer.append('\n');
 				}
 				writer.flush();
 			}
@@ -78,7 +177,302 @@ public class TokenBasedDuplicateFinder {
 		}
 	}
 	
-	private static String[] getTokenSequence(final Path tokensFile, final ArrayList<String> temp) throws IOException {
+	private static boolean isOption(final String option) {
+		switch (option) {
+			case FINGERPRINT_OPTION:
+			case STATISTICS_OPTION:
+			case INDEX_OPTION:
+			case THREADS_OPTION:
+			case MEMORY_OPTION:
+			case JACCARD_OPTION:
+			case BYTES_OPTION:
+				return true;
+			default:
+				return false;
+		}
+	}
+	
+	private static boolean isValidOption(final String option, final String value) {
+		switch (option) {
+			case FINGERPRINT_OPTION:
+			case STATISTICS_OPTION:
+			case INDEX_OPTION:
+				return value == null;
+			case THREADS_OPTION:
+			case MEMORY_OPTION:
+				return Common.parsePositiveInt(value) > 0;
+			case JACCARD_OPTION:
+				return parseThreshold(value) > 0.0;
+			case BYTES_OPTION:
+				return CommonPaths.ORIGINAL_DIR.equals(value) || CommonPaths.TEXT_ORIGINAL_DIR.equals(value);
+			default:
+				return false;
+		}
+	}
+	
+	private static Path bytesDir(final Path crawlDir, final String dirName) {
+		if (CommonPaths.ORIGINAL_DIR.equals(dirName))
+			return crawlDir.resolve(CommonPaths.ORIGINAL_DIR);
+		return crawlDir.resolve(CommonPaths.TEXT_DIR).resolve(CommonPaths.TEXT_ORIGINAL_DIR);
+	}
+	
+	// 0 if invalid
+	private static double parseThreshold(final String value) {
+		if (value == null)
+			return 0.0;
+		final double result;
+		try {
+			result = Double.parseDouble(value);
+		} catch (final NumberFormatException e) {
+			return 0.0;
+		}
+		if (result > 0.0 && result <= 1.0)
+			return result;
+		return 0.0;
+	}
+	
+	private static void printUsage() {
+		System.err.println("Invalid command line arguments.");
+		System.err.println("Expecting two or more arguments:");
+		System.err.println("crawler output directory (or several, to find duplicates across them; files are then named by their paths)");
+		System.err.println("output file");
+		System.err.println("optional: \"" + FINGERPRINT_OPTION + "\" to compare token sequences by fingerprints instead of keeping them in memory");
+		System.err.println("optional: \"" + STATISTICS_OPTION + "\" to report hash collision statistics");
+		System.err.println("optional: \"" + INDEX_OPTION + "\" to compare by fingerprints and keep them in an index in each crawler output directory for later runs");
+		System.err.println("optional: \"" + MEMORY_OPTION + "=M\" to compare by fingerprints using about M megabytes of memory, spilling to temporary files");
+		System.err.println("optional: \"" + BYTES_OPTION + "=" + CommonPaths.ORIGINAL_DIR + "\" or \"" + BYTES_OPTION + "=" + CommonPaths.TEXT_ORIGINAL_DIR + "\" to find byte-identical files in that directory instead");
+		System.err.println("optional: \"" + THREADS_OPTION + "=N\" to read the token files with N threads");
+		System.err.println("optional: \"" + JACCARD_OPTION + "=T\" to find near-duplicates with an estimated Jaccard similarity of at least T (0 < T <= 1)");
+	}
+	
+	// groups of at least two files, each sorted by filename, sorted by their first filename
+	private static ArrayList<ArrayList<String>> sortGroups(final Collection<ArrayList<String>> groups) {
+		final ArrayList<ArrayList<String>> result = new ArrayList<>();
+		for (final ArrayList<String> list : groups) {
+			if (list.size() > 1) {
+				Collections.sort(list);
+				result.add(list);
+			}
+		}
+		Collections.sort(result, (list1, list2) -> list1.get(0).compareTo(list2.get(0)));
+		return result;
+	}
+	
+	private static ArrayList<ArrayList<String>> findDuplicates(final CrawlFiles tokenFiles, final int threads, final HashingStatistics statistics) throws IOException {
+		final Map<HashableTokenSequence, ArrayList<String>> candidates = newGroupingMap(threads);
+		tokenFiles.forEach(threads, file -> {
+			final HashableTokenSequence key = new HashableTokenSequence(getTokenSequence(file), statistics);
+			addToGroup(candidates, key, tokenFiles.nameOf(file));
+		});
+		if (statistics != null)
+			statistics.report(candidates.keySet());
+		return new ArrayList<>(candidates.values());
+	}
+	
+	private static ArrayList<ArrayList<String>> findDuplicatesByFingerprint(final CrawlFiles tokenFiles, final int threads) throws IOException {
+		final Map<TokenSequenceFingerprint, ArrayList<String>> candidates = newGroupingMap(threads);
+		tokenFiles.forEach(threads, file -> addToGroup(candidates, TokenSequenceFingerprint.of(file), tokenFiles.nameOf(file)));
+		
+		final ArrayList<ArrayList<String>> result = new ArrayList<>();
+		try (final WorkerPool workers = new WorkerPool(threads, 4 * threads)) {
+			for (final ArrayList<String> list : candidates.values())
+				if (list.size() > 1)
+					workers.submit(() -> confirmDuplicates(tokenFiles, list, result));
+			workers.finish();
+		}
+		return result;
+	}
+	
+	// one index per crawler output directory, so that each one stays usable on its own
+	private static ArrayList<ArrayList<String>> findDuplicatesByFingerprint(final CrawlFiles tokenFiles, final int threads, final List<Path> indexFiles) throws IOException {
+		final List<Path> dirs = tokenFiles.getDirectories();
+		final HashMap<Path, FingerprintIndex> indexes = new HashMap<>();
+		final Map<TokenSequenceFingerprint, ArrayList<String>> candidates = newGroupingMap(threads);
+		final Set<TokenSequenceFingerprint> changed = (threads > 1) ? ConcurrentHashMap.newKeySet() : new HashSet<>();
+		for (int i = 0; i < dirs.size(); i++) {
+			final FingerprintIndex previousIndex = FingerprintIndex.load(indexFiles.get(i));
+			// files no longer present are not carried over
+			final FingerprintIndex index = new FingerprintIndex(threads > 1);
+			indexes.put(dirs.get(i), index);
+			tokenFiles.forEachIn(i, threads, file -> {
+				final String filename = file.getFileName().toString();
+				final BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+				final long size = attributes.size();
+				final long lastModified = attributes.lastModifiedTime().toMillis();
+				final FingerprintIndex.Entry entry = previousIndex.lookup(filename, size, lastModified);
+				final TokenSequenceFingerprint key;
+				if (entry == null) {
+					key = TokenSequenceFingerprint.of(file);
+					changed.add(key);
+					index.put(filename, size, lastModified, key, false);
+				} else {
+					key = entry.fingerprint;
+					if (entry.collision)
+						changed.add(key);
+					index.put(filename, size, lastModified, key, entry.collision);
+				}
+				addToGroup(candidates, key, tokenFiles.nameOf(file));
+			});
+		}
+		
+		/*
+		 * Groups of unchanged files without collisions have been confirmed
+		 * by the run that built the index, so only the other groups need
+		 * to be read again. That run only compared the files of one
+		 * directory, though, so groups spanning several directories
+		 * are read again, too.
+		 */
+		final ArrayList<ArrayList<String>> result = new ArrayList<>();
+		try (final WorkerPool workers = new WorkerPool(threads, 4 * threads)) {
+			for (final Entry<TokenSequenceFingerprint, ArrayList<String>> entry : candidates.entrySet()) {
+				final ArrayList<String> list = entry.getValue();
+				if (list.size() < 2)
+					continue;
+				if (!changed.contains(entry.getKey()) && !isInSeveralDirectories(tokenFiles, list)) {
+					synchronized (result) {
+						result.add(list);
+					}
+					continue;
+				}
+				workers.submit(() -> {
+					final ArrayList<ArrayList<String>> confirmed = new ArrayList<>();
+					confirmDuplicates(tokenFiles, list, confirmed);
+					final boolean collision = (confirmed.size() > 1);
+					for (final String name : list) {
+						final Path file = tokenFiles.fileNamed(name);
+						indexes.get(file.getParent()).get(file.getFileName().toString()).collision = collision;
+					}
+					synchronized (result) {
+						result.addAll(confirmed);
+					}
+				});
+			}
+			workers.finish();
+		}
+		
+		for (int i = 0; i < dirs.size(); i++)
+			indexes.get(dirs.get(i)).save(indexFiles.get(i));
+		return result;
+	}
+	
+	private static boolean isInSeveralDirectories(final CrawlFiles tokenFiles, final List<String> names) {
+		final Path directory = tokenFiles.fileNamed(names.get(0)).getParent();
+		for (final String name : names)
+			if (!directory.equals(tokenFiles.fileNamed(name).getParent()))
+				return true;
+		return false;
+	}
+	
+	/*
+	 * (fingerprint, filename) records are sorted externally, so that files
+	 * with the same fingerprint become adjacent; the confirmed groups are
+	 * sorted externally, too, to produce the same order as the other modes
+	 */
+	private static void findDuplicatesWithBoundedMemory(final CrawlFiles tokenFiles, final int threads, final long memoryBudget, final Path outputFile) throws IOException {
+		final Path tempDir = outputFile.getParent();
+		try (final ExternalLineSorter records = new ExternalLineSorter(tempDir, "fingerprints", memoryBudget / 2L)) {
+			try (final ExternalLineSorter groupLines = new ExternalLineSorter(tempDir, "groups", memoryBudget / 2L)) {
+				tokenFiles.forEach(threads, file -> records.add(TokenSequenceFingerprint.of(file).toString() + '\t' + tokenFiles.nameOf(file)));
+				
+				try (final WorkerPool workers = new WorkerPool(threads, 4 * threads)) {
+					final SortedRecordsGrouping grouping = new SortedRecordsGrouping(tokenFiles, workers, groupLines);
+					records.sort(grouping);
+					grouping.finishGroup();
+					workers.finish();
+				}
+				
+				try (final BufferedWriter writer = Files.newBufferedWriter(outputFile, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+					groupLines.sort(line -> writer.append(line).append('\n'));
+					writer.flush();
+				}
+			}
+		}
+	}
+	
+	private static <K> Map<K, ArrayList<String>> newGroupingMap(final int threads) {
+		if (threads > 1)
+			return new ConcurrentHashMap<>();
+		return new HashMap<>();
+	}
+	
+	// atomic for ConcurrentHashMap
+	private static <K> void addToGroup(final Map<K, ArrayList<String>> groups, final K key, final String filename) {
+		groups.compute(key, (k, list) -> {
+			final ArrayList<String> result = (list == null) ? new ArrayList<>(1) : list;
+			result.add(filename);
+			return result;
+		});
+	}
+	
+	private static class SortedRecordsGrouping implements ExternalLineSorter.LineConsumer {
+		
+		private final CrawlFiles pTokenFiles;
+		private final WorkerPool pWorkers;
+		private final ExternalLineSorter pGroupLines;
+		
+		private String pFingerprint;
+		private ArrayList<String> pFilenames;
+		
+		public SortedRecordsGrouping(final CrawlFiles tokenFiles, final WorkerPool workers, final ExternalLineSorter groupLines) {
+			pTokenFiles = tokenFiles;
+			pWorkers = workers;
+			pGroupLines = groupLines;
+			pFingerprint = null;
+			pFilenames = new ArrayList<>();
+		}
+		
+		// records are sorted by fingerprint and, for the same fingerprint, by filename
+		@Override
+		public void accept(final String record) throws IOException {
+			final int separatorIndex = record.indexOf('\t');
+			final String fingerprint = record.substring(0, separatorIndex);
+			if (!fingerprint.equals(pFingerprint)) {
+				finishGroup();
+				pFingerprint = fingerprint;
+			}
+			pFilenames.add(record.substring(separatorIndex + 1));
+		}
+		
+		public void finishGroup() throws IOException {
+			final ArrayList<String> filenames = pFilenames;
+			pFilenames = new ArrayList<>();
+			if (filenames.size() < 2)
+				return;
+			pWorkers.submit(() -> {
+				final ArrayList<ArrayList<String>> confirmed = new ArrayList<>();
+				confirmDuplicates(pTokenFiles, filenames, confirmed);
+				for (final ArrayList<String> group : confirmed)
+					if (group.size() > 1)
+						pGroupLines.add(String.join("\t", group));
+			});
+		}
+	}
+	
+	// files with the same fingerprint are re-read to rule out fingerprint collisions
+	private static void confirmDuplicates(final CrawlFiles tokenFiles, final ArrayList<String> sameFingerprint, final ArrayList<ArrayList<String>> result) throws IOException {
+		final ArrayList<ArrayList<String>> groups = new ArrayList<>(1);
+		for (final String filename : sameFingerprint) {
+			final Path file = tokenFiles.fileNamed(filename);
+			ArrayList<String> group = null;
+			for (final ArrayList<String> candidate : groups) {
+				if (TokenSequenceFingerprint.sameTokenSequence(tokenFiles.fileNamed(candidate.get(0)), file)) {
+					group = candidate;
+					break;
+				}
+			}
+			if (group == null) {
+				group = new ArrayList<>();
+				groups.add(group);
+			}
+			group.add(filename);
+		}
+		synchronized (result) {
+			result.addAll(groups);
+		}
+	}
+	
+	private static String[] getTokenSequence(final Path tokensFile) throws IOException {
+		final ArrayList<String> temp = new ArrayList<>();
 		try (final BufferedReader reader = Files.newBufferedReader(tokensFile, StandardCharsets.UTF_8)) {
 			while (true) {
 				final String line = reader.readLine();
@@ -89,26 +483,33 @@ public class TokenBasedDuplicateFinder {
 				temp.add(line);
 			}
 		}
-		final String[] result = temp.toArray(new String[temp.size()]);
-		temp.clear();
-		return result;
+		return temp.toArray(new String[temp.size()]);
 	}
 	
 	private static class HashableTokenSequence {
 		
 		private final int pHashCode;
 		private final String[] pTokenSequence;
+		private final HashingStatistics pStatistics;
 		
-		public HashableTokenSequence(final String[] tokenSequence) {
+		public HashableTokenSequence(final String[] tokenSequence, final HashingStatistics statistics) {
 			pTokenSequence = tokenSequence;
 			pHashCode = hashTokenSequence(tokenSequence);
+			pStatistics = statistics;
 		}
 		
+		// order-sensitive: every token hash is mixed into the state before the next one is added
 		private static int hashTokenSequence(final String[] tokenSequence) {
-			int hashCode = 0;
+			long hash = tokenSequence.length;
 			for (final String str : tokenSequence)
-				hashCode ^= str.hashCode();
-			return hashCode;
+				hash = Long.rotateLeft((hash ^ str.hashCode()) * 0x9E3779B97F4A7C15L, 31);
+			// final avalanche step (from MurmurHash3) so that all bits affect the lower bits used by HashMap
+			hash ^= hash >>> 33;
+			hash *= 0xFF51AFD7ED558CCDL;
+			hash ^= hash >>> 33;
+			hash *= 0xC4CEB9FE1A85EC53L;
+			hash ^= hash >>> 33;
+			return (int) hash;
 		}
 		
 		@Override
@@ -129,11 +530,52 @@ public class TokenBasedDuplicateFinder {
 			final int n = pTokenSequence.length;
 			if (n != obj.pTokenSequence.length)
 				return false;
-			for (int i = 0; i < n; i++)
-				if (!pTokenSequence[i].equals(obj.pTokenSequence[i]))
+			for (int i = 0; i < n; i++) {
+				if (!pTokenSequence[i].equals(obj.pTokenSequence[i])) {
+					countComparison(i + 1);
 					return false;
+				}
+			}
+			countComparison(n);
 			return true;
 		}
+		
+		private void countComparison(final int tokensCompared) {
+			if (pStatistics != null)
+				pStatistics.countComparison(tokensCompared);
+		}
+	}
+	
+	private static class HashingStatistics {
+		
+		private final LongAdder pComparisons = new LongAdder();
+		private final LongAdder pTokensCompared = new LongAdder();
+		
+		public void countComparison(final int tokensCompared) {
+			pComparisons.increment();
+			pTokensCompared.add(tokensCompared);
+		}
+		
+		public void report(final Collection<HashableTokenSequence> distinctTokenSequences) {
+			final HashMap<Integer, Integer> sequencesPerHashCode = new HashMap<>();
+			for (final HashableTokenSequence tokenSequence : distinctTokenSequences)
+				sequencesPerHashCode.merge(tokenSequence.hashCode(), 1, Integer::sum);
+			final TreeMap<Integer, Long> histogram = new TreeMap<>();
+			for (final Integer bucketSize : sequencesPerHashCode.values())
+				histogram.merge(bucketSize, 1L, Long::sum);
+			
+			System.out.println("Distinct token sequences: " + distinctTokenSequences.size());
+			System.out.println("Distinct hash codes: " + sequencesPerHashCode.size());
+			System.out.println("Hash codes by number of distinct token sequences sharing them:");
+			for (final Entry<Integer, Long> entry : histogram.entrySet()) {
+				System.out.print('\t');
+				System.out.print(entry.getKey().toString());
+				System.out.print('\t');
+				System.out.println(entry.getValue().toString());
+			}
+			System.out.println("Full token sequence comparisons: " + pComparisons);
+			System.out.println("Tokens compared: " + pTokensCompared);
+		}
 	}
 	
 }
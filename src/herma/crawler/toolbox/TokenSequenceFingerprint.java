@@ -0,0 +1,212 @@
+/* This Source Code Form is subject to the terms of the hermA Licence.
+ * If a copy of the licence was not distributed with this file, You have
+ * received this Source Code Form in a manner that does not comply with
+ * the terms of the licence.
+ */
+package herma.crawler.toolbox;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * A 128-bit fingerprint of the token sequence stored in a file
+ * in the {@link herma.crawler.toolbox.common.CommonPaths#TEXT_TOKENS_DIR}
+ * sub-directory of the text directory.
+ * <p>
+ * The fingerprint is computed from the non-empty lines of such a file,
+ * which are the tokens; empty lines (sentence boundaries) are ignored.
+ * Files with the same token sequence therefore have the same fingerprint,
+ * even if the token sequences are split differently into sentences.
+ * Files with the same fingerprint are very likely, but not guaranteed,
+ * to have the same token sequence; use
+ * {@link #sameTokenSequence(Path, Path)}
+ * to confirm.
+ * </p>
+ * <p>
+ * Where sentence boundaries matter, {@link #ofTokenization(Path)}
+ * computes a fingerprint of all lines instead.
+ * </p>
+ */
+public final class TokenSequenceFingerprint {
+	
+	private static final String DIGEST_ALGORITHM = "MD5";
+	
+	private final long pHigh;
+	private final long pLow;
+	
+	private TokenSequenceFingerprint(final long high, final long low) {
+		pHigh = high;
+		pLow = low;
+	}
+	
+	/**
+	 * Computes the fingerprint of the token sequence in a tokens file.
+	 * The file is read once, line by line, without keeping
+	 * the token sequence in memory.
+	 * 
+	 * @param tokensFile
+	 * (a {@link Path} locating) the tokens file;
+	 * not {@code null}
+	 * 
+	 * @return
+	 * the fingerprint of the token sequence;
+	 * not {@code null}
+	 * 
+	 * @throws IOException
+	 * if an I/O error occurs
+	 */
+	public static TokenSequenceFingerprint of(final Path tokensFile) throws IOException {
+		return compute(tokensFile, true);
+	}
+	
+	/**
+	 * Computes the fingerprint of the tokenization in a tokens file,
+	 * including the sentence boundaries (empty lines).
+	 * Files with the same lines (regardless of the line terminators)
+	 * have the same fingerprint.
+	 * 
+	 * @param tokensFile
+	 * (a {@link Path} locating) the tokens file;
+	 * not {@code null}
+	 * 
+	 * @return
+	 * the fingerprint of the tokenization;
+	 * not {@code null}
+	 * 
+	 * @throws IOException
+	 * if an I/O error occurs
+	 */
+	public static TokenSequenceFingerprint ofTokenization(final Path tokensFile) throws IOException {
+		return compute(tokensFile, false);
+	}
+	
+	private static TokenSequenceFingerprint compute(final Path tokensFile, final boolean ignoreEmptyLines) throws IOException {
+		final MessageDigest digest = newDigest();
+		try (final BufferedReader reader = Files.newBufferedReader(tokensFile, StandardCharsets.UTF_8)) {
+			while (true) {
+				final String line = reader.readLine();
+				if (line == null)
+					break;
+				if (ignoreEmptyLines && "".equals(line))
+					continue;
+				digest.update(line.getBytes(StandardCharsets.UTF_8));
+				// tokens cannot contain line breaks, so this separates them unambiguously
+				digest.update((byte) '\n');
+			}
+		}
+		final byte[] bytes = digest.digest();
+		return new TokenSequenceFingerprint(toLong(bytes, 0), toLong(bytes, 8));
+	}
+	
+	/**
+	 * Parses a fingerprint from its {@link #toString()} representation.
+	 * 
+	 * @param hex
+	 * 32 hexadecimal digits;
+	 * not {@code null}
+	 * 
+	 * @return
+	 * the fingerprint;
+	 * not {@code null}
+	 * 
+	 * @throws IllegalArgumentException
+	 * if the argument is not a valid fingerprint representation
+	 */
+	public static TokenSequenceFingerprint parse(final String hex) {
+		if (hex.length() != 32)
+			throw new IllegalArgumentException("not a fingerprint: " + hex);
+		return new TokenSequenceFingerprint(Long.parseUnsignedLong(hex.substring(0, 16), 16), Long.parseUnsignedLong(hex.substring(16), 16));
+	}
+	
+	/**
+	 * Determines whether two tokens files contain the same token sequence,
+	 * ignoring empty lines (sentence boundaries).
+	 * The files are read in parallel, line by line, without keeping
+	 * the token sequences in memory.
+	 * 
+	 * @param tokensFile1
+	 * (a {@link Path} locating) the first tokens file;
+	 * not {@code null}
+	 * 
+	 * @param tokensFile2
+	 * (a {@link Path} locating) the second tokens file;
+	 * not {@code null}
+	 * 
+	 * @return
+	 * {@code true} if both files contain the same token sequence,
+	 * {@code false} otherwise
+	 * 
+	 * @throws IOException
+	 * if an I/O error occurs
+	 */
+	public static boolean sameTokenSequence(final Path tokensFile1, final Path tokensFile2) throws IOException {
+		try (final BufferedReader reader1 = Files.newBufferedReader(tokensFile1, StandardCharsets.UTF_8)) {
+			try (final BufferedReader reader2 = Files.newBufferedReader(tokensFile2, StandardCharsets.UTF_8)) {
+				while (true) {
+					final String token1 = nextToken(reader1);
+					final String token2 = nextToken(reader2);
+					final boolean no1 = (token1 == null);
+					final boolean no2 = (token2 == null);
+					if (no1 && no2)
+						return true;
+					if (no1 || no2)
+						return false;
+					if (!token1.equals(token2))
+						return false;
+				}
+			}
+		}
+	}
+	
+	private static String nextToken(final BufferedReader reader) throws IOException {
+		while (true) {
+			final String line = reader.readLine();
+			if (line == null || !"".equals(line))
+				return line;
+		}
+	}
+	
+	private static MessageDigest newDigest() {
+		try {
+			return MessageDigest.getInstance(DIGEST_ALGORITHM);
+		} catch (final NoSuchAlgorithmException e) {
+			// every Java platform is required to support MD5
+			throw new IllegalStateException(e);
+		}
+	}
+	
+	private static long toLong(final byte[] bytes, final int offset) {
+		long result = 0L;
+		for (int i = offset; i < offset + 8; i++)
+			result = (result << 8) | (bytes[i] & 0xFFL);
+		return result;
+	}
+	
+	@Override
+	public int hashCode() {
+		// the bits of a message digest are uniformly distributed already
+		return (int) pLow;
+	}
+	
+	@Override
+	public boolean equals(final Object obj) {
+		if (obj instanceof TokenSequenceFingerprint)
+			return equals((TokenSequenceFingerprint) obj);
+		return false;
+	}
+	
+	public boolean equals(final TokenSequenceFingerprint obj) {
+		return pHigh == obj.pHigh && pLow == obj.pLow;
+	}
+	
+	@Override
+	public String toString() {
+		return String.format("%016x%016x", pHigh, pLow);
+	}
+	
+}
@@ -0,0 +1,196 @@
+/* This Source Code Form is subject to the terms of the hermA Licence.
+ * If a copy of the licence was not distributed with this file, You have
+ * received this Source Code Form in a manner that does not comply with
+ * the terms of the licence.
+ */
+package herma.crawler.toolbox.common;
+
+import java.util.Arrays;
+
+/**
+ * Finds the columns of lines with columns separated by tabulator
+ * ({@literal "\t"}) characters, like the lines of most output files
+ * of the web crawler.
+ * <p>
+ * Unlike splitting a line with {@link Common#TAB_PATTERN}, scanning
+ * a line only records the offsets of its tabs in an array which is
+ * reused for the next line; a column is only copied into a new
+ * {@link String} when it is requested by {@link #getColumn(int)},
+ * and it can be compared without copying it by
+ * {@link #columnEquals(int, String)}.
+ * </p>
+ * <p>
+ * A line with <var>n</var> tabs has <var>n</var> + 1 columns,
+ * some of which may be empty; in particular, an empty line
+ * has one empty column.
+ * </p>
+ * <p>
+ * This class is not thread-safe.
+ * </p>
+ */
+public class ColumnScanner {
+	
+	private String pLine;
+	// pTabs[i] is the index of the tab after column i
+	private int[] pTabs;
+	private int pColumnCount;
+	
+	/**
+	 * Creates a {@link ColumnScanner} which has not scanned a line yet.
+	 */
+	public ColumnScanner() {
+		pLine = "";
+		pTabs = new int[8];
+		pColumnCount = 1;
+	}
+	
+	/**
+	 * Scans a line, replacing the line scanned before.
+	 * 
+	 * @param line
+	 * the line (without line break);
+	 * not {@code null}
+	 * 
+	 * @return
+	 * this {@link ColumnScanner};
+	 * not {@code null}
+	 */
+	public ColumnScanner scan(final String line) {
+		pLine = line;
+		int tabs = 0;
+		for (int i = line.indexOf('\t'); i >= 0; i = line.indexOf('\t', i + 1)) {
+			if (tabs == pTabs.length)
+				pTabs = Arrays.copyOf(pTabs, 2 * tabs);
+			pTabs[tabs++] = i;
+		}
+		pColumnCount = tabs + 1;
+		return this;
+	}
+	
+	/**
+	 * Returns the line scanned last.
+	 * 
+	 * @return
+	 * the line;
+	 * not {@code null}
+	 */
+	public String getLine() {
+		return pLine;
+	}
+	
+	/**
+	 * Returns the number of columns of the line scanned last.
+	 * 
+	 * @return
+	 * the number of columns;
+	 * at least 1
+	 */
+	public int getColumnCount() {
+		return pColumnCount;
+	}
+	
+	/**
+	 * Returns the index of the first character of a column in the line.
+	 * 
+	 * @param index
+	 * the (0-based) index of the column
+	 * 
+	 * @return
+	 * the index of the first character
+	 * 
+	 * @throws IndexOutOfBoundsException
+	 * if the line has no such column
+	 */
+	public int getColumnStart(final int index) {
+		checkIndex(index);
+		return index == 0 ? 0 : pTabs[index - 1] + 1;
+	}
+	
+	/**
+	 * Returns the index after the last character of a column in the line.
+	 * 
+	 * @param index
+	 * the (0-based) index of the column
+	 * 
+	 * @return
+	 * the index after the last character
+	 * 
+	 * @throws IndexOutOfBoundsException
+	 * if the line has no such column
+	 */
+	public int getColumnEnd(final int index) {
+		checkIndex(index);
+		return index == pColumnCount - 1 ? pLine.length() : pTabs[index];
+	}
+	
+	/**
+	 * Returns a column of the line.
+	 * 
+	 * @param index
+	 * the (0-based) index of the column
+	 * 
+	 * @return
+	 * the column;
+	 * not {@code null}
+	 * 
+	 * @throws IndexOutOfBoundsException
+	 * if the line has no such column
+	 */
+	public String getColumn(final int index) {
+		return pLine.substring(getColumnStart(index), getColumnEnd(index));
+	}
+	
+	/**
+	 * Determines whether a column of the line equals a {@link String},
+	 * without copying the column.
+	 * 
+	 * @param index
+	 * the (0-based) index of the column
+	 * 
+	 * @param value
+	 * the {@link String};
+	 * not {@code null}
+	 * 
+	 * @return
+	 * {@code true} if the line has such a column and it equals the {@link String},
+	 * {@code false} otherwise
+	 */
+	public boolean columnEquals(final int index, final String value) {
+		if (index < 0 || index >= pColumnCount)
+			return false;
+		final int start = getColumnStart(index);
+		return getColumnEnd(index) - start == value.length() && pLine.startsWith(value, start);
+	}
+	
+	private void checkIndex(final int index) {
+		if (index < 0 || index >= pColumnCount)
+			throw new IndexOutOfBoundsException("column " + index + " of a line with " + pColumnCount + " columns");
+	}
+	
+	/**
+	 * Returns a column of a line, scanning the line only
+	 * up to the end of the column.
+	 * 
+	 * @param line
+	 * the line (without line break);
+	 * not {@code null}
+	 * 
+	 * @param index
+	 * the (0-based) index of the column
+	 * 
+	 * @return
+	 * the column,
+	 * or {@code null} if the line has fewer columns
+	 */
+	public static String column(final String line, final int index) {
+		int start = 0;
+		for (int i = 0; i < index; i++) {
+			start = line.indexOf('\t', start) + 1;
+			if (start == 0)
+				return null;
+		}
+		final int end = line.indexOf('\t', start);
+		return line.substring(start, end < 0 ? line.length() : end);
+	}
+	
+}
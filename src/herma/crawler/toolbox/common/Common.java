@@ -5,9 +5,11 @@
  */
 package herma.crawler.toolbox.common;
 
+import java.io.IOException;
 import java.nio.file.FileSystem;
+import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.Optional;
+import java.util.Objects;
 import java.util.regex.Pattern;
 import java.util.stream.Stream;
 
@@ -24,7 +26,8 @@ public class Common {
 	 * such lines can be split into columns using the
 	 * {@link Pattern#split(CharSequence)}
 	 * method (or one of the related methods) of this
-	 * {@link Pattern}.
+	 * {@link Pattern}; a {@link ColumnScanner} finds
+	 * the columns without copying them, though.
 	 */
 	public static final Pattern TAB_PATTERN = Pattern.compile(Pattern.quote("\t"));
 	
@@ -50,10 +53,96 @@ public class Common {
 		return fileSystem.getPath(pathString).toAbsolutePath().normalize();
 	}
 	
+	/**
+	 * Gives a file the POSIX file permissions of another file,
+	 * such as a temp file replacing that file
+	 * (temp files are only accessible by their owner).
+	 * Does nothing if the file system does not support POSIX
+	 * file permissions.
+	 * 
+	 * @param source
+	 * (a {@link Path} locating) the file whose permissions to copy,
+	 * not {@code null}
+	 * 
+	 * @param target
+	 * (a {@link Path} locating) the file whose permissions to set,
+	 * not {@code null}
+	 * 
+	 * @throws IOException
+	 * if an I/O error occurs
+	 */
+	public static void copyPermissions(final Path source, final Path target) throws IOException {
+		try {
+			Files.setPosixFilePermissions(target, Files.getPosixFilePermissions(source));
+		} catch (final UnsupportedOperationException e) {
+			// not a POSIX file system
+		}
+	}
+	
+	/**
+	 * Returns the name of an option given as a command line argument,
+	 * that is, the part of the argument before the first
+	 * {@literal "="} character (or the whole argument if there is none).
+	 * 
+	 * @param arg
+	 * the command line argument,
+	 * not {@code null}
+	 * 
+	 * @return
+	 * the name of the option;
+	 * not {@code null}
+	 */
+	public static String optionName(final String arg) {
+		final int separatorIndex = arg.indexOf('=');
+		return separatorIndex < 0 ? arg : arg.substring(0, separatorIndex);
+	}
+	
+	/**
+	 * Returns the value of an option given as a command line argument,
+	 * that is, the part of the argument after the first
+	 * {@literal "="} character.
+	 * 
+	 * @param arg
+	 * the command line argument,
+	 * not {@code null}
+	 * 
+	 * @return
+	 * the value of the option,
+	 * or {@code null} if the argument has no value
+	 */
+	public static String optionValue(final String arg) {
+		final int separatorIndex = arg.indexOf('=');
+		return separatorIndex < 0 ? null : arg.substring(separatorIndex + 1);
+	}
+	
+	/**
+	 * Parses the value of an option which must be a positive number,
+	 * such as the number of threads.
+	 * 
+	 * @param value
+	 * the value of the option (see {@link #optionValue(String)}),
+	 * may be {@code null}
+	 * 
+	 * @return
+	 * the number,
+	 * or -1 if the value is {@code null}, not a number or not positive
+	 */
+	public static int parsePositiveInt(final String value) {
+		if (value == null)
+			return -1;
+		try {
+			final int result = Integer.parseInt(value);
+			return result > 0 ? result : -1;
+		} catch (final NumberFormatException e) {
+			return -1;
+		}
+	}
+	
 	/**
 	 * Takes a {@link Stream} of {@link String} objects,
-	 * splits them using {@link #TAB_PATTERN},
 	 * selects the item at the specified index (if present)
+	 * of the items separated by tabs
+	 * (see {@link ColumnScanner#column(String, int)})
 	 * and returns a stream of these items.
 	 * 
 	 * @param lines
@@ -69,11 +158,8 @@ public class Common {
 	 */
 	public static Stream<String> selectColumn(final Stream<String> lines, final int columnIndex) {
 		return lines
-				.map(Common.TAB_PATTERN::splitAsStream)
-				.map(s -> s.skip(columnIndex))
-				.map(Stream::findFirst)
-				.filter(Optional::isPresent)
-				.map(Optional::get);
+				.map(line -> ColumnScanner.column(line, columnIndex))
+				.filter(Objects::nonNull);
 	}
 	
 }
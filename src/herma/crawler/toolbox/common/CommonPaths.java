@@ -99,4 +99,13 @@ public class CommonPaths {
 	 */
 	public static final String MATCHES_FILE = "matches.txt";
 	
+	/**
+	 * The name of the file inside the output directory
+	 * where the toolbox caches its index of
+	 * {@link #URLS_FILE}, {@link #FILES_FILE} and {@link #MATCHES_FILE}
+	 * (see {@link MetadataCache}):
+	 * {@value #METADATA_CACHE_FILE}
+	 */
+	public static final String METADATA_CACHE_FILE = "metadata.cache";
+	
 }
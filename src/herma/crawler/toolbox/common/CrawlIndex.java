@@ -0,0 +1,542 @@
+/* This Source Code Form is subject to the terms of the hermA Licence.
+ * If a copy of the licence was not distributed with this file, You have
+ * received this Source Code Form in a manner that does not comply with
+ * the terms of the licence.
+ */
+package herma.crawler.toolbox.common;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.function.IntPredicate;
+
+/**
+ * An index of the metadata files {@link CommonPaths#URLS_FILE},
+ * {@link CommonPaths#FILES_FILE} and {@link CommonPaths#MATCHES_FILE}
+ * of a web crawler output directory.
+ * <p>
+ * The URLs and filenames are stored once each in {@link StringPool}s
+ * and identified by their {@code int} IDs; all filename columns share
+ * the same IDs. The lines of the metadata files are stored as IDs in
+ * primitive arrays, and the filenames which appear in each column as
+ * {@link BitSet}s of IDs, so that the metadata files can be related
+ * to each other (which original file has which URL, which filenames of
+ * {@link CommonPaths#FILES_FILE} are missing in
+ * {@link CommonPaths#MATCHES_FILE} and so on) without looking up
+ * any strings again.
+ * </p>
+ * <p>
+ * The metadata files are loaded one by one; a tool only loads those
+ * it needs. Missing columns are stored as the ID -1.
+ * {@link MetadataCache} stores the index of all metadata files
+ * of an output directory for the next tool.
+ * </p>
+ * <p>
+ * This class is not thread-safe, but an index which is not loading
+ * any more may be read by several threads.
+ * </p>
+ */
+public class CrawlIndex {
+	
+	/**
+	 * The filename column of {@link CommonPaths#FILES_FILE} for the
+	 * {@link CommonPaths#ORIGINAL_DIR} directory.
+	 */
+	public static final int ORIGINAL = 0;
+	
+	/**
+	 * The filename column of {@link CommonPaths#FILES_FILE} for the
+	 * {@link CommonPaths#TEXT_ORIGINAL_DIR} sub-directory of the text directory.
+	 */
+	public static final int TEXT_ORIGINAL = 1;
+	
+	/**
+	 * The filename column of {@link CommonPaths#FILES_FILE} for the
+	 * {@link CommonPaths#TEXT_TOKENS_DIR} sub-directory of the text directory.
+	 */
+	public static final int TEXT_TOKENS = 2;
+	
+	/**
+	 * The filename column of {@link CommonPaths#FILES_FILE} for the
+	 * {@link CommonPaths#TEXT_POS_LEMMA_DIR} sub-directory of the text directory.
+	 */
+	public static final int TEXT_POS_LEMMA = 3;
+	
+	/**
+	 * The filename column of {@link CommonPaths#FILES_FILE} for the
+	 * {@link CommonPaths#TEXT_PARSE_DIR}
+	 * (and {@link CommonPaths#TEXT_PARSER_INPUT_DIR})
+	 * sub-directory of the text directory.
+	 */
+	public static final int TEXT_PARSE = 4;
+	
+	/**
+	 * The number of filename columns of {@link CommonPaths#FILES_FILE}:
+	 * {@value #NAME_COLUMNS}
+	 */
+	public static final int NAME_COLUMNS = 5;
+	
+	// the indices of the filename columns in the lines of files.txt
+	private static final int[] FILES_FILE_COLUMNS = { 0, 2, 3, 4, 5 };
+	private static final int URLS_FILE_URL_COLUMN = 0;
+	private static final int URLS_FILE_NAME_COLUMN = 3;
+	private static final int MATCHES_FILE_NAME_COLUMN = 0;
+	
+	private final StringPool pUrls;
+	private final StringPool pNames;
+	
+	// 2 entries per line: URL ID, filename ID
+	private int[] pUrlLines;
+	private int pUrlLineCount;
+	// NAME_COLUMNS entries per line
+	private int[] pFileLines;
+	private int pFileLineCount;
+	private int[] pMatchLines;
+	private int pMatchLineCount;
+	
+	// URL IDs by filename ID, -1 for filenames without URL
+	private int[] pUrlOfName;
+	private final BitSet pUrlNames;
+	private final BitSet[] pFileNames;
+	private final BitSet pMatchNames;
+	
+	/**
+	 * Creates an empty {@link CrawlIndex}.
+	 */
+	public CrawlIndex() {
+		this(new StringPool(), new StringPool());
+	}
+	
+	private CrawlIndex(final StringPool urls, final StringPool names) {
+		pUrls = urls;
+		pNames = names;
+		pUrlLines = new int[2 * 64];
+		pUrlLineCount = 0;
+		pFileLines = new int[NAME_COLUMNS * 64];
+		pFileLineCount = 0;
+		pMatchLines = new int[64];
+		pMatchLineCount = 0;
+		pUrlOfName = new int[0];
+		pUrlNames = new BitSet();
+		pFileNames = new BitSet[NAME_COLUMNS];
+		for (int column = 0; column < NAME_COLUMNS; column++)
+			pFileNames[column] = new BitSet();
+		pMatchNames = new BitSet();
+	}
+	
+	/**
+	 * Loads a {@link CommonPaths#URLS_FILE}.
+	 * If a filename appears in several lines,
+	 * the URL of the last line counts.
+	 * 
+	 * @param urlsFile
+	 * (a {@link Path} locating) the file;
+	 * not {@code null}
+	 * 
+	 * @throws IOException
+	 * if an I/O error occurs
+	 */
+	public void loadUrls(final Path urlsFile) throws IOException {
+		final ColumnScanner columns = new ColumnScanner();
+		try (final BufferedReader reader = Files.newBufferedReader(urlsFile, StandardCharsets.UTF_8)) {
+			while (true) {
+				final String line = reader.readLine();
+				if (line == null)
+					break;
+				columns.scan(line);
+				final int urlId = pUrls.intern(columns.getColumn(URLS_FILE_URL_COLUMN));
+				final int nameId = internColumn(columns, URLS_FILE_NAME_COLUMN);
+				if (2 * pUrlLineCount == pUrlLines.length)
+					pUrlLines = Arrays.copyOf(pUrlLines, 2 * pUrlLines.length);
+				pUrlLines[2 * pUrlLineCount] = urlId;
+				pUrlLines[2 * pUrlLineCount + 1] = nameId;
+				pUrlLineCount++;
+				setUrlOf(nameId, urlId);
+			}
+		}
+	}
+	
+	private void setUrlOf(final int nameId, final int urlId) {
+		if (nameId < 0)
+			return;
+		if (nameId >= pUrlOfName.length) {
+			final int length = pUrlOfName.length;
+			pUrlOfName = Arrays.copyOf(pUrlOfName, Math.max(2 * length, Math.max(nameId + 1, 1024)));
+			Arrays.fill(pUrlOfName, length, pUrlOfName.length, -1);
+		}
+		pUrlOfName[nameId] = urlId;
+		pUrlNames.set(nameId);
+	}
+	
+	/**
+	 * Loads a {@link CommonPaths#FILES_FILE}.
+	 * 
+	 * @param filesFile
+	 * (a {@link Path} locating) the file;
+	 * not {@code null}
+	 * 
+	 * @throws IOException
+	 * if an I/O error occurs
+	 */
+	public void loadFiles(final Path filesFile) throws IOException {
+		final ColumnScanner columns = new ColumnScanner();
+		try (final BufferedReader reader = Files.newBufferedReader(filesFile, StandardCharsets.UTF_8)) {
+			while (true) {
+				final String line = reader.readLine();
+				if (line == null)
+					break;
+				columns.scan(line);
+				if (NAME_COLUMNS * pFileLineCount == pFileLines.length)
+					pFileLines = Arrays.copyOf(pFileLines, 2 * pFileLines.length);
+				for (int column = 0; column < NAME_COLUMNS; column++) {
+					final int nameId = internColumn(columns, FILES_FILE_COLUMNS[column]);
+					pFileLines[NAME_COLUMNS * pFileLineCount + column] = nameId;
+					if (nameId >= 0)
+						pFileNames[column].set(nameId);
+				}
+				pFileLineCount++;
+			}
+		}
+	}
+	
+	/**
+	 * Loads a {@link CommonPaths#MATCHES_FILE}.
+	 * 
+	 * @param matchesFile
+	 * (a {@link Path} locating) the file;
+	 * not {@code null}
+	 * 
+	 * @throws IOException
+	 * if an I/O error occurs
+	 */
+	public void loadMatches(final Path matchesFile) throws IOException {
+		try (final BufferedReader reader = Files.newBufferedReader(matchesFile, StandardCharsets.UTF_8)) {
+			while (true) {
+				final String line = reader.readLine();
+				if (line == null)
+					break;
+				// the filename is the first column, so the rest of the line need not be scanned
+				final int nameId = pNames.intern(ColumnScanner.column(line, MATCHES_FILE_NAME_COLUMN));
+				if (pMatchLineCount == pMatchLines.length)
+					pMatchLines = Arrays.copyOf(pMatchLines, 2 * pMatchLines.length);
+				pMatchLines[pMatchLineCount++] = nameId;
+				pMatchNames.set(nameId);
+			}
+		}
+	}
+	
+	private int internColumn(final ColumnScanner columns, final int index) {
+		return index < columns.getColumnCount() ? pNames.intern(columns.getColumn(index)) : -1;
+	}
+	
+	/**
+	 * Deletes lines of the {@link CommonPaths#URLS_FILE} loaded,
+	 * like they have been deleted from the file.
+	 * 
+	 * @param deletionDecision
+	 * an {@link IntPredicate} which is called with the ID of
+	 * the filename of each line (or -1 if the line has no filename)
+	 * and returns {@code true} if the line is to be deleted;
+	 * not {@code null}
+	 */
+	public void deleteUrlLines(final IntPredicate deletionDecision) {
+		int count = 0;
+		for (int line = 0; line < pUrlLineCount; line++) {
+			if (deletionDecision.test(pUrlLines[2 * line + 1]))
+				continue;
+			pUrlLines[2 * count] = pUrlLines[2 * line];
+			pUrlLines[2 * count + 1] = pUrlLines[2 * line + 1];
+			count++;
+		}
+		pUrlLineCount = count;
+		indexUrlLines();
+	}
+	
+	/**
+	 * Deletes lines of the {@link CommonPaths#FILES_FILE} loaded,
+	 * like they have been deleted from the file.
+	 * 
+	 * @param lines
+	 * the (0-based) indices of the lines;
+	 * not {@code null}
+	 */
+	public void deleteFileLines(final BitSet lines) {
+		int count = 0;
+		for (int line = 0; line < pFileLineCount; line++) {
+			if (lines.get(line))
+				continue;
+			System.arraycopy(pFileLines, NAME_COLUMNS * line, pFileLines, NAME_COLUMNS * count, NAME_COLUMNS);
+			count++;
+		}
+		pFileLineCount = count;
+		indexFileLines();
+	}
+	
+	/**
+	 * Deletes lines of the {@link CommonPaths#MATCHES_FILE} loaded,
+	 * like they have been deleted from the file.
+	 * 
+	 * @param deletionDecision
+	 * an {@link IntPredicate} which is called with the ID of
+	 * the filename of each line
+	 * and returns {@code true} if the line is to be deleted;
+	 * not {@code null}
+	 */
+	public void deleteMatchLines(final IntPredicate deletionDecision) {
+		int count = 0;
+		for (int line = 0; line < pMatchLineCount; line++) {
+			if (deletionDecision.test(pMatchLines[line]))
+				continue;
+			pMatchLines[count++] = pMatchLines[line];
+		}
+		pMatchLineCount = count;
+		indexMatchLines();
+	}
+	
+	private void indexUrlLines() {
+		pUrlOfName = new int[0];
+		pUrlNames.clear();
+		for (int line = 0; line < pUrlLineCount; line++)
+			setUrlOf(pUrlLines[2 * line + 1], pUrlLines[2 * line]);
+	}
+	
+	private void indexFileLines() {
+		for (int column = 0; column < NAME_COLUMNS; column++)
+			pFileNames[column].clear();
+		for (int line = 0; line < pFileLineCount; line++) {
+			for (int column = 0; column < NAME_COLUMNS; column++) {
+				final int nameId = pFileLines[NAME_COLUMNS * line + column];
+				if (nameId >= 0)
+					pFileNames[column].set(nameId);
+			}
+		}
+	}
+	
+	private void indexMatchLines() {
+		pMatchNames.clear();
+		for (int line = 0; line < pMatchLineCount; line++)
+			pMatchNames.set(pMatchLines[line]);
+	}
+	
+	void write(final MetadataCache.Writer out) throws IOException {
+		pUrls.write(out);
+		pNames.write(out);
+		out.writeInt(pUrlLineCount);
+		out.writeInts(pUrlLines, 2 * pUrlLineCount);
+		out.writeInt(pFileLineCount);
+		out.writeInts(pFileLines, NAME_COLUMNS * pFileLineCount);
+		out.writeInt(pMatchLineCount);
+		out.writeInts(pMatchLines, pMatchLineCount);
+	}
+	
+	// the BitSets and the URLs by filename are not written, but computed from the lines
+	static CrawlIndex read(final MetadataCache.Reader in) throws IOException {
+		final StringPool urls = StringPool.read(in);
+		final StringPool names = StringPool.read(in);
+		final CrawlIndex result = new CrawlIndex(urls, names);
+		result.pUrlLineCount = in.readInt();
+		result.pUrlLines = in.readInts(2 * result.pUrlLineCount, 2 * 64);
+		result.pFileLineCount = in.readInt();
+		result.pFileLines = in.readInts(NAME_COLUMNS * result.pFileLineCount, NAME_COLUMNS * 64);
+		result.pMatchLineCount = in.readInt();
+		result.pMatchLines = in.readInts(result.pMatchLineCount, 64);
+		result.indexUrlLines();
+		result.indexFileLines();
+		result.indexMatchLines();
+		return result;
+	}
+	
+	/**
+	 * Returns the URLs.
+	 * 
+	 * @return
+	 * the {@link StringPool} of the URLs, which must not be changed;
+	 * not {@code null}
+	 */
+	public StringPool getUrls() {
+		return pUrls;
+	}
+	
+	/**
+	 * Returns the filenames (of all columns).
+	 * 
+	 * @return
+	 * the {@link StringPool} of the filenames, which must not be changed;
+	 * not {@code null}
+	 */
+	public StringPool getNames() {
+		return pNames;
+	}
+	
+	/**
+	 * Looks up the ID of a filename.
+	 * 
+	 * @param filename
+	 * the filename;
+	 * not {@code null}
+	 * 
+	 * @return
+	 * the ID of the filename,
+	 * or -1 if it does not appear in the metadata files loaded
+	 */
+	public int findName(final String filename) {
+		return pNames.find(filename);
+	}
+	
+	/**
+	 * Returns a filename.
+	 * 
+	 * @param nameId
+	 * the ID of the filename
+	 * 
+	 * @return
+	 * the filename;
+	 * not {@code null}
+	 */
+	public String nameOf(final int nameId) {
+		return pNames.get(nameId);
+	}
+	
+	/**
+	 * Returns the number of lines of the {@link CommonPaths#URLS_FILE} loaded.
+	 * 
+	 * @return
+	 * the number of lines
+	 */
+	public int urlLineCount() {
+		return pUrlLineCount;
+	}
+	
+	/**
+	 * Returns the URL of a line of the {@link CommonPaths#URLS_FILE} loaded.
+	 * 
+	 * @param line
+	 * the (0-based) index of the line
+	 * 
+	 * @return
+	 * the ID of the URL
+	 */
+	public int getUrlOfUrlLine(final int line) {
+		return pUrlLines[2 * line];
+	}
+	
+	/**
+	 * Returns the filename of a line of the {@link CommonPaths#URLS_FILE} loaded.
+	 * 
+	 * @param line
+	 * the (0-based) index of the line
+	 * 
+	 * @return
+	 * the ID of the filename,
+	 * or -1 if the line has no filename
+	 */
+	public int getNameOfUrlLine(final int line) {
+		return pUrlLines[2 * line + 1];
+	}
+	
+	/**
+	 * Returns the number of lines of the {@link CommonPaths#FILES_FILE} loaded.
+	 * 
+	 * @return
+	 * the number of lines
+	 */
+	public int fileLineCount() {
+		return pFileLineCount;
+	}
+	
+	/**
+	 * Returns a filename of a line of the {@link CommonPaths#FILES_FILE} loaded.
+	 * 
+	 * @param line
+	 * the (0-based) index of the line
+	 * 
+	 * @param column
+	 * the filename column, such as {@link #ORIGINAL}
+	 * 
+	 * @return
+	 * the ID of the filename,
+	 * or -1 if the line has no such column
+	 */
+	public int getNameOfFileLine(final int line, final int column) {
+		return pFileLines[NAME_COLUMNS * line + column];
+	}
+	
+	/**
+	 * Returns the number of lines of the {@link CommonPaths#MATCHES_FILE} loaded.
+	 * 
+	 * @return
+	 * the number of lines
+	 */
+	public int matchLineCount() {
+		return pMatchLineCount;
+	}
+	
+	/**
+	 * Returns the filename of a line of the {@link CommonPaths#MATCHES_FILE} loaded.
+	 * 
+	 * @param line
+	 * the (0-based) index of the line
+	 * 
+	 * @return
+	 * the ID of the filename
+	 */
+	public int getNameOfMatchLine(final int line) {
+		return pMatchLines[line];
+	}
+	
+	/**
+	 * Returns the URL of an original file
+	 * according to the {@link CommonPaths#URLS_FILE} loaded.
+	 * 
+	 * @param nameId
+	 * the ID of the filename
+	 * 
+	 * @return
+	 * the ID of the URL,
+	 * or -1 if the file has no URL
+	 */
+	public int getUrlOf(final int nameId) {
+		return (nameId >= 0 && nameId < pUrlOfName.length) ? pUrlOfName[nameId] : -1;
+	}
+	
+	/**
+	 * Returns the filenames in the {@link CommonPaths#URLS_FILE} loaded.
+	 * 
+	 * @return
+	 * a new {@link BitSet} of the IDs of the filenames;
+	 * not {@code null}
+	 */
+	public BitSet getUrlNames() {
+		return (BitSet) pUrlNames.clone();
+	}
+	
+	/**
+	 * Returns the filenames in a column of the {@link CommonPaths#FILES_FILE} loaded.
+	 * 
+	 * @param column
+	 * the filename column, such as {@link #ORIGINAL}
+	 * 
+	 * @return
+	 * a new {@link BitSet} of the IDs of the filenames;
+	 * not {@code null}
+	 */
+	public BitSet getFileNames(final int column) {
+		return (BitSet) pFileNames[column].clone();
+	}
+	
+	/**
+	 * Returns the filenames in the {@link CommonPaths#MATCHES_FILE} loaded.
+	 * 
+	 * @return
+	 * a new {@link BitSet} of the IDs of the filenames;
+	 * not {@code null}
+	 */
+	public BitSet getMatchNames() {
+		return (BitSet) pMatchNames.clone();
+	}
+	
+}
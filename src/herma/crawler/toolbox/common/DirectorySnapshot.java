@@ -0,0 +1,117 @@
+/* This Source Code Form is subject to the terms of the hermA Licence.
+ * If a copy of the licence was not distributed with this file, You have
+ * received this Source Code Form in a manner that does not comply with
+ * the terms of the licence.
+ */
+package herma.crawler.toolbox.common;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The names of the files in a directory at one point in time,
+ * listed once so that the existence of many files can be checked
+ * without a file system access (such as a {@code stat} system call,
+ * which is a network round trip on a network file system) for each.
+ * <p>
+ * The names are stored as a {@link BitSet} of their IDs in a
+ * {@link StringPool} (usually the filenames of a {@link CrawlIndex});
+ * only the names which are not in the {@link StringPool} are kept
+ * as {@link String}s.
+ * </p>
+ * <p>
+ * A {@link DirectorySnapshot} is not updated when files are
+ * created or deleted in the directory.
+ * </p>
+ */
+public class DirectorySnapshot {
+	
+	private final BitSet pNameIds;
+	private final ArrayList<String> pOtherNames;
+	
+	private DirectorySnapshot() {
+		pNameIds = new BitSet();
+		pOtherNames = new ArrayList<>();
+	}
+	
+	/**
+	 * Lists a directory.
+	 * 
+	 * @param directory
+	 * (a {@link Path} locating) the directory,
+	 * which may also be a directory in a pack file
+	 * opened by {@link PackedDirectories#open(Path)};
+	 * not {@code null}
+	 * 
+	 * @param names
+	 * the {@link StringPool} of the names,
+	 * which must not be changed while the directory is listed
+	 * (but may be read by other threads);
+	 * not {@code null}
+	 * 
+	 * @return
+	 * the {@link DirectorySnapshot};
+	 * not {@code null}
+	 * 
+	 * @throws IOException
+	 * if an I/O error occurs
+	 */
+	public static DirectorySnapshot list(final Path directory, final StringPool names) throws IOException {
+		final DirectorySnapshot result = new DirectorySnapshot();
+		try (final DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+			for (final Path file : files) {
+				final String filename = file.getFileName().toString();
+				final int nameId = names.find(filename);
+				if (nameId >= 0)
+					result.pNameIds.set(nameId);
+				else
+					result.pOtherNames.add(filename);
+			}
+		}
+		return result;
+	}
+	
+	/**
+	 * Determines whether there was a file with a name in the directory.
+	 * 
+	 * @param nameId
+	 * the ID of the name in the {@link StringPool},
+	 * or -1 for a name which is not in the {@link StringPool}
+	 * 
+	 * @return
+	 * {@code true} if there was a file with the name,
+	 * {@code false} otherwise or if the ID is -1
+	 */
+	public boolean contains(final int nameId) {
+		return nameId >= 0 && pNameIds.get(nameId);
+	}
+	
+	/**
+	 * Returns the names of the files which are in the {@link StringPool}.
+	 * 
+	 * @return
+	 * a new {@link BitSet} of the IDs of the names;
+	 * not {@code null}
+	 */
+	public BitSet getNameIds() {
+		return (BitSet) pNameIds.clone();
+	}
+	
+	/**
+	 * Returns the names of the files which are not in the {@link StringPool}.
+	 * 
+	 * @return
+	 * an unmodifiable {@link List} of the names, in the order of listing;
+	 * not {@code null}
+	 */
+	public List<String> getOtherNames() {
+		return Collections.unmodifiableList(pOtherNames);
+	}
+	
+}
@@ -0,0 +1,228 @@
+/* This Source Code Form is subject to the terms of the hermA Licence.
+ * If a copy of the licence was not distributed with this file, You have
+ * received this Source Code Form in a manner that does not comply with
+ * the terms of the licence.
+ */
+package herma.crawler.toolbox.common;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.PriorityQueue;
+
+/**
+ * Sorts lines of text (in the natural order of {@link String}s)
+ * using a bounded amount of memory.
+ * <p>
+ * Lines are collected in memory until their estimated size exceeds
+ * the memory budget. Then they are sorted and written to a temporary
+ * file (a sorted <i>run</i>). When all lines have been added,
+ * {@link #sort(LineConsumer)} merges the runs and the lines remaining
+ * in memory, reading every run sequentially.
+ * Lines must not contain line breaks.
+ * </p>
+ * <p>
+ * The temporary files are deleted by {@link #close()}.
+ * </p>
+ */
+public class ExternalLineSorter implements AutoCloseable {
+	
+	/**
+	 * Receives lines in sorted order.
+	 */
+	@FunctionalInterface
+	public interface LineConsumer {
+		
+		/**
+		 * Receives a line.
+		 * 
+		 * @param line
+		 * the line;
+		 * not {@code null}
+		 * 
+		 * @throws IOException
+		 * if an I/O error occurs
+		 */
+		void accept(String line) throws IOException;
+		
+	}
+	
+	// object header, fields and array header of a String plus a reference in the list
+	private static final long LINE_OVERHEAD = 64L;
+	
+	private static final int MAX_MERGE_WIDTH = 256;
+	
+	private final Path pTempDir;
+	private final String pTempFilePrefix;
+	private final long pMemoryBudget;
+	
+	private final ArrayList<String> pLines;
+	private long pEstimatedSize;
+	private final ArrayList<Path> pRuns;
+	
+	/**
+	 * Creates an {@link ExternalLineSorter}.
+	 * 
+	 * @param tempDir
+	 * (a {@link Path} locating) the directory where to create
+	 * the temporary files;
+	 * not {@code null}
+	 * 
+	 * @param tempFilePrefix
+	 * a prefix for the names of the temporary files;
+	 * not {@code null}
+	 * 
+	 * @param memoryBudget
+	 * the estimated number of bytes of lines to keep in memory
+	 * before writing them to a temporary file
+	 */
+	public ExternalLineSorter(final Path tempDir, final String tempFilePrefix, final long memoryBudget) {
+		pTempDir = tempDir;
+		pTempFilePrefix = tempFilePrefix;
+		pMemoryBudget = memoryBudget;
+		pLines = new ArrayList<>();
+		pEstimatedSize = 0L;
+		pRuns = new ArrayList<>();
+	}
+	
+	/**
+	 * Adds a line, possibly writing the lines collected so far
+	 * to a temporary file.
+	 * This method may be called by several threads.
+	 * 
+	 * @param line
+	 * the line;
+	 * not {@code null}
+	 * 
+	 * @throws IOException
+	 * if an I/O error occurs
+	 */
+	public synchronized void add(final String line) throws IOException {
+		pLines.add(line);
+		pEstimatedSize += LINE_OVERHEAD + 2L * line.length();
+		if (pEstimatedSize > pMemoryBudget)
+			spill();
+	}
+	
+	private void spill() throws IOException {
+		Collections.sort(pLines);
+		final Path run = Files.createTempFile(pTempDir, pTempFilePrefix, "");
+		pRuns.add(run);
+		try (final BufferedWriter writer = Files.newBufferedWriter(run, StandardCharsets.UTF_8, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+			for (final String line : pLines)
+				writer.append(line).append('\n');
+			writer.flush();
+		}
+		pLines.clear();
+		pLines.trimToSize();
+		pEstimatedSize = 0L;
+	}
+	
+	/**
+	 * Passes all lines added so far to a {@link LineConsumer}
+	 * in sorted order.
+	 * No more lines must be added afterwards.
+	 * 
+	 * @param consumer
+	 * the {@link LineConsumer};
+	 * not {@code null}
+	 * 
+	 * @throws IOException
+	 * if an I/O error occurs
+	 */
+	public synchronized void sort(final LineConsumer consumer) throws IOException {
+		Collections.sort(pLines);
+		// merging too many runs at once would exhaust file handles
+		while (pRuns.size() > MAX_MERGE_WIDTH) {
+			final ArrayList<Path> runs = new ArrayList<>(pRuns.subList(0, MAX_MERGE_WIDTH));
+			final Path mergedRun = Files.createTempFile(pTempDir, pTempFilePrefix, "");
+			pRuns.add(mergedRun);
+			try (final BufferedWriter writer = Files.newBufferedWriter(mergedRun, StandardCharsets.UTF_8, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+				merge(runs, new ArrayList<>(0), line -> writer.append(line).append('\n'));
+				writer.flush();
+			}
+			for (final Path run : runs)
+				Files.delete(run);
+			pRuns.subList(0, MAX_MERGE_WIDTH).clear();
+		}
+		merge(pRuns, pLines, consumer);
+	}
+	
+	private static void merge(final ArrayList<Path> runs, final ArrayList<String> sortedLines, final LineConsumer consumer) throws IOException {
+		final ArrayList<BufferedReader> readers = new ArrayList<>(runs.size());
+		try {
+			final PriorityQueue<Source> queue = new PriorityQueue<>(runs.size() + 1, (s1, s2) -> s1.current.compareTo(s2.current));
+			for (final Path run : runs) {
+				final BufferedReader reader = Files.newBufferedReader(run, StandardCharsets.UTF_8);
+				readers.add(reader);
+				final Source source = new Source(reader);
+				if (source.advance())
+					queue.add(source);
+			}
+			final Source memory = new Source(sortedLines);
+			if (memory.advance())
+				queue.add(memory);
+			
+			while (!queue.isEmpty()) {
+				final Source source = queue.poll();
+				consumer.accept(source.current);
+				if (source.advance())
+					queue.add(source);
+			}
+		} finally {
+			for (final BufferedReader reader : readers)
+				reader.close();
+		}
+	}
+	
+	/**
+	 * Deletes the temporary files.
+	 * 
+	 * @throws IOException
+	 * if an I/O error occurs
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		for (final Path run : pRuns)
+			Files.deleteIfExists(run);
+		pRuns.clear();
+		pLines.clear();
+	}
+	
+	private static class Source {
+		
+		private final BufferedReader pReader;
+		private final ArrayList<String> pLines;
+		private int pIndex;
+		
+		public String current;
+		
+		public Source(final BufferedReader reader) {
+			pReader = reader;
+			pLines = null;
+		}
+		
+		public Source(final ArrayList<String> lines) {
+			pReader = null;
+			pLines = lines;
+			pIndex = 0;
+		}
+		
+		public boolean advance() throws IOException {
+			if (pReader != null)
+				current = pReader.readLine();
+			else if (pIndex < pLines.size())
+				current = pLines.get(pIndex++);
+			else
+				current = null;
+			return current != null;
+		}
+	}
+	
+}
@@ -0,0 +1,299 @@
+/* This Source Code Form is subject to the terms of the hermA Licence.
+ * If a copy of the licence was not distributed with this file, You have
+ * received this Source Code Form in a manner that does not comply with
+ * the terms of the licence.
+ */
+package herma.crawler.toolbox.common;
+
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Copies files on a {@link WorkerPool}, so that the latency of
+ * copying many small files (on networked storage, for example)
+ * is overlapped.
+ * <p>
+ * Optionally, hard links are created instead of copies, which takes
+ * no time and space for the content of the files. Where creating
+ * a hard link fails (for example, because the target directory is on
+ * a different file system), the file is copied instead.
+ * </p>
+ * <p>
+ * Files can also be copied into packed directories
+ * (see {@link PackedDirectories}).
+ * </p>
+ * <p>
+ * Failing copies do not stop the other copies. The errors are
+ * collected by target directory (or pack file) and reported by {@link #finish()}.
+ * While copying, the number of files and bytes copied so far and
+ * the throughput are reported on {@link System#out} every
+ * {@value #PROGRESS_INTERVAL_MILLIS} milliseconds.
+ * </p>
+ */
+public class FileCopier implements AutoCloseable {
+	
+	/**
+	 * The minimum time between two progress reports in milliseconds:
+	 * {@value #PROGRESS_INTERVAL_MILLIS}
+	 */
+	public static final long PROGRESS_INTERVAL_MILLIS = 10000L;
+	
+	private final WorkerPool pWorkers;
+	private final boolean pLink;
+	private final boolean pReplaceExisting;
+	
+	private final LongAdder pLinks;
+	private final LongAdder pFiles;
+	private final LongAdder pBytes;
+	private final TreeMap<Path, ArrayList<String>> pErrors;
+	private int pErrorCount;
+	
+	private final long pStartTime;
+	private long pLastReportTime;
+	
+	/**
+	 * Creates a {@link FileCopier}.
+	 * 
+	 * @param threads
+	 * the number of threads copying files;
+	 * if less than 2, files are copied by the thread calling
+	 * {@link #copy(Path, Path)}
+	 * 
+	 * @param link
+	 * whether to create hard links instead of copies where possible
+	 * 
+	 * @param replaceExisting
+	 * whether to replace existing target files
+	 * (left behind by an interrupted run, for example);
+	 * otherwise, existing target files are errors
+	 */
+	public FileCopier(final int threads, final boolean link, final boolean replaceExisting) {
+		pWorkers = new WorkerPool(threads, 4 * threads);
+		pLink = link;
+		pReplaceExisting = replaceExisting;
+		pLinks = new LongAdder();
+		pFiles = new LongAdder();
+		pBytes = new LongAdder();
+		pErrors = new TreeMap<>();
+		pErrorCount = 0;
+		pStartTime = System.currentTimeMillis();
+		pLastReportTime = pStartTime;
+	}
+	
+	/**
+	 * Copies a file, possibly after this method has returned.
+	 * Blocks while too many copies are waiting.
+	 * The target file must not exist, unless existing target files
+	 * are to be replaced.
+	 * 
+	 * @param source
+	 * (a {@link Path} locating) the file to copy;
+	 * not {@code null}
+	 * 
+	 * @param target
+	 * (a {@link Path} locating) the copy;
+	 * not {@code null}
+	 * 
+	 * @throws IOException
+	 * not thrown for errors copying the file,
+	 * which are reported by {@link #finish()}
+	 */
+	public void copy(final Path source, final Path target) throws IOException {
+		submit(source, target, false);
+	}
+	
+	/**
+	 * Copies a file like {@link #copy(Path, Path)},
+	 * but only if it exists.
+	 * 
+	 * @param source
+	 * (a {@link Path} locating) the file to copy;
+	 * not {@code null}
+	 * 
+	 * @param target
+	 * (a {@link Path} locating) the copy;
+	 * not {@code null}
+	 * 
+	 * @throws IOException
+	 * not thrown for errors copying the file,
+	 * which are reported by {@link #finish()}
+	 */
+	public void copyIfExists(final Path source, final Path target) throws IOException {
+		submit(source, target, true);
+	}
+	
+	private void submit(final Path source, final Path target, final boolean optional) throws IOException {
+		pWorkers.submit(() -> {
+			try {
+				if (optional && !Files.exists(source))
+					return;
+				if (pReplaceExisting)
+					Files.deleteIfExists(target);
+				if (pLink && tryLink(source, target))
+					return;
+				final long size = Files.size(source);
+				Files.copy(source, target);
+				pFiles.increment();
+				pBytes.add(size);
+			} catch (final IOException e) {
+				addError(target.getParent(), source + ": " + e);
+			}
+		});
+		reportProgressIfDue();
+	}
+	
+	private void reportProgressIfDue() {
+		final long now = System.currentTimeMillis();
+		if (now - pLastReportTime >= PROGRESS_INTERVAL_MILLIS) {
+			pLastReportTime = now;
+			reportProgress(now);
+		}
+	}
+	
+	/**
+	 * Appends a file to a pack file, possibly after this method has returned.
+	 * Blocks while too many copies are waiting.
+	 * The file keeps its name and time of last modification.
+	 * 
+	 * @param source
+	 * (a {@link Path} locating) the file to copy;
+	 * not {@code null}
+	 * 
+	 * @param pack
+	 * the {@link PackWriter} of the pack file;
+	 * not {@code null}
+	 * 
+	 * @throws IOException
+	 * not thrown for errors copying the file,
+	 * which are reported by {@link #finish()}
+	 */
+	public void pack(final Path source, final PackWriter pack) throws IOException {
+		submitPack(source, pack, false);
+	}
+	
+	/**
+	 * Appends a file to a pack file like {@link #pack(Path, PackWriter)},
+	 * but only if it exists.
+	 * 
+	 * @param source
+	 * (a {@link Path} locating) the file to copy;
+	 * not {@code null}
+	 * 
+	 * @param pack
+	 * the {@link PackWriter} of the pack file;
+	 * not {@code null}
+	 * 
+	 * @throws IOException
+	 * not thrown for errors copying the file,
+	 * which are reported by {@link #finish()}
+	 */
+	public void packIfExists(final Path source, final PackWriter pack) throws IOException {
+		submitPack(source, pack, true);
+	}
+	
+	private void submitPack(final Path source, final PackWriter pack, final boolean optional) throws IOException {
+		pWorkers.submit(() -> {
+			try {
+				if (optional && !Files.exists(source))
+					return;
+				final long size = pack.add(source.getFileName().toString(), source, Files.getLastModifiedTime(source));
+				pFiles.increment();
+				pBytes.add(size);
+			} catch (final IOException e) {
+				addError(pack.getFile(), source + ": " + e);
+			}
+		});
+		reportProgressIfDue();
+	}
+	
+	private boolean tryLink(final Path source, final Path target) throws IOException {
+		try {
+			Files.createLink(target, source);
+		} catch (final FileAlreadyExistsException e) {
+			// copying would fail, too
+			throw e;
+		} catch (final IOException | UnsupportedOperationException e) {
+			return false;
+		}
+		pLinks.increment();
+		return true;
+	}
+	
+	private void addError(final Path targetDir, final String message) {
+		synchronized (pErrors) {
+			pErrors.computeIfAbsent(targetDir, k -> new ArrayList<>()).add(message);
+			pErrorCount++;
+		}
+	}
+	
+	/**
+	 * Waits for all copies requested so far to finish.
+	 * Must be called by the thread requesting the copies.
+	 * 
+	 * @return
+	 * the number of files that could not be copied so far
+	 * 
+	 * @throws IOException
+	 * if an I/O error occurs;
+	 * a {@link RuntimeException} or {@link Error} which has stopped
+	 * a copy (without an error being recorded for the file)
+	 * is rethrown as it is
+	 */
+	public int awaitCopies() throws IOException {
+		pWorkers.await();
+		if (pWorkers.hasFailed())
+			pWorkers.finish();
+		synchronized (pErrors) {
+			return pErrorCount;
+		}
+	}
+	
+	private void reportProgress(final long now) {
+		final long files = pFiles.sum();
+		final long bytes = pBytes.sum();
+		final double seconds = Math.max(now - pStartTime, 1L) / 1000.0;
+		final String linked = pLink ? ("Linked " + pLinks.sum() + " files, copied") : "Copied";
+		System.out.println(String.format("%s %d files (%.1f MB) in %.0f s: %.1f files/s, %.1f MB/s", linked, files, bytes / 1e6, seconds, files / seconds, bytes / 1e6 / seconds));
+	}
+	
+	/**
+	 * Waits for all copies to finish, reports the number of files
+	 * copied and prints the errors (if any) on {@link System#err},
+	 * grouped by target directory (or pack file).
+	 * 
+	 * @return
+	 * {@code true} if all files have been copied,
+	 * {@code false} if there have been errors
+	 * 
+	 * @throws IOException
+	 * if an I/O error occurs
+	 */
+	public boolean finish() throws IOException {
+		pWorkers.finish();
+		reportProgress(System.currentTimeMillis());
+		synchronized (pErrors) {
+			for (final Entry<Path, ArrayList<String>> entry : pErrors.entrySet()) {
+				final ArrayList<String> messages = entry.getValue();
+				System.err.println(messages.size() + " file(s) could not be copied to " + entry.getKey() + ':');
+				for (final String message : messages)
+					System.err.println(message);
+			}
+			return pErrors.isEmpty();
+		}
+	}
+	
+	/**
+	 * Stops copying files, unless {@link #finish()} has been called before.
+	 */
+	@Override
+	public void close() {
+		pWorkers.close();
+	}
+	
+}
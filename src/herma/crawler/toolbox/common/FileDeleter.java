@@ -0,0 +1,179 @@
+/* This Source Code Form is subject to the terms of the hermA Licence.
+ * If a copy of the licence was not distributed with this file, You have
+ * received this Source Code Form in a manner that does not comply with
+ * the terms of the licence.
+ */
+package herma.crawler.toolbox.common;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Deletes files on a {@link WorkerPool}, so that the latency of
+ * deleting many small files (on networked storage, for example)
+ * is overlapped.
+ * <p>
+ * The files are collected in batches of up to {@value #BATCH_SIZE}
+ * files of the same directory, and each batch is deleted by one
+ * worker thread, so that the threads rarely modify the same directory
+ * at the same time.
+ * Files can also be deleted from packed directories
+ * (see {@link PackedDirectories}).
+ * </p>
+ * <p>
+ * Failing deletions do not stop the other deletions. The errors are
+ * collected by directory and reported by {@link #finish()}.
+ * While deleting, the number of files deleted so far and
+ * the throughput are reported on {@link System#out} every
+ * {@value FileCopier#PROGRESS_INTERVAL_MILLIS} milliseconds.
+ * </p>
+ */
+public class FileDeleter implements AutoCloseable {
+	
+	/**
+	 * The maximum number of files of one directory
+	 * which are deleted by one task:
+	 * {@value #BATCH_SIZE}
+	 */
+	public static final int BATCH_SIZE = 256;
+	
+	private final WorkerPool pWorkers;
+	private final PackedDirectories pPacks;
+	
+	// the files to delete by directory (as if it was not packed) which have not been submitted yet
+	private final HashMap<Path, ArrayList<Path>> pBatches;
+	
+	private final LongAdder pFiles;
+	private final TreeMap<Path, ArrayList<String>> pErrors;
+	
+	private final long pStartTime;
+	private long pLastReportTime;
+	
+	/**
+	 * Creates a {@link FileDeleter}.
+	 * 
+	 * @param threads
+	 * the number of threads deleting files;
+	 * if less than 2, files are deleted by the thread calling
+	 * {@link #delete(Path)} (or {@link #finish()})
+	 * 
+	 * @param packs
+	 * the {@link PackedDirectories} locating files
+	 * in packed directories, which must not be closed
+	 * before {@link #finish()} has returned,
+	 * or {@code null} if all directories are ordinary directories
+	 */
+	public FileDeleter(final int threads, final PackedDirectories packs) {
+		pWorkers = new WorkerPool(threads, 4 * threads);
+		pPacks = packs;
+		pBatches = new HashMap<>();
+		pFiles = new LongAdder();
+		pErrors = new TreeMap<>();
+		pStartTime = System.currentTimeMillis();
+		pLastReportTime = pStartTime;
+	}
+	
+	/**
+	 * Deletes a file if it exists, possibly after this method has returned.
+	 * Blocks while too many batches are waiting.
+	 * 
+	 * @param file
+	 * (a {@link Path} locating) the file,
+	 * as if its directory was not packed;
+	 * not {@code null}
+	 * 
+	 * @throws IOException
+	 * if the pack file of a packed directory cannot be opened;
+	 * not thrown for errors deleting the file,
+	 * which are reported by {@link #finish()}
+	 */
+	public void delete(final Path file) throws IOException {
+		final Path directory = file.getParent();
+		// PackedDirectories is not thread-safe, so the file is located here
+		final Path located = pPacks == null ? file : pPacks.locate(file);
+		final ArrayList<Path> batch = pBatches.computeIfAbsent(directory, k -> new ArrayList<>());
+		batch.add(located);
+		if (batch.size() >= BATCH_SIZE) {
+			pBatches.remove(directory);
+			submit(directory, batch);
+		}
+		reportProgressIfDue();
+	}
+	
+	private void submit(final Path directory, final ArrayList<Path> batch) throws IOException {
+		pWorkers.submit(() -> {
+			for (final Path file : batch) {
+				try {
+					if (Files.deleteIfExists(file))
+						pFiles.increment();
+				} catch (final IOException e) {
+					addError(directory, file.getFileName() + ": " + e);
+				}
+			}
+		});
+	}
+	
+	private void reportProgressIfDue() {
+		final long now = System.currentTimeMillis();
+		if (now - pLastReportTime >= FileCopier.PROGRESS_INTERVAL_MILLIS) {
+			pLastReportTime = now;
+			reportProgress(now);
+		}
+	}
+	
+	private void addError(final Path directory, final String message) {
+		synchronized (pErrors) {
+			pErrors.computeIfAbsent(directory, k -> new ArrayList<>()).add(message);
+		}
+	}
+	
+	private void reportProgress(final long now) {
+		final long files = pFiles.sum();
+		final double seconds = Math.max(now - pStartTime, 1L) / 1000.0;
+		System.out.println(String.format("Deleted %d files in %.0f s: %.1f files/s", files, seconds, files / seconds));
+	}
+	
+	/**
+	 * Deletes the remaining files, waits for all deletions to finish,
+	 * reports the number of files deleted and prints the errors (if any)
+	 * on {@link System#err}, grouped by directory.
+	 * 
+	 * @return
+	 * {@code true} if all files have been deleted (or did not exist),
+	 * {@code false} if there have been errors
+	 * 
+	 * @throws IOException
+	 * if an I/O error occurs
+	 */
+	public boolean finish() throws IOException {
+		for (final Entry<Path, ArrayList<Path>> entry : pBatches.entrySet())
+			submit(entry.getKey(), entry.getValue());
+		pBatches.clear();
+		pWorkers.finish();
+		reportProgress(System.currentTimeMillis());
+		synchronized (pErrors) {
+			for (final Entry<Path, ArrayList<String>> entry : pErrors.entrySet()) {
+				final ArrayList<String> messages = entry.getValue();
+				System.err.println(messages.size() + " file(s) could not be deleted from " + entry.getKey() + ':');
+				for (final String message : messages)
+					System.err.println(message);
+			}
+			return pErrors.isEmpty();
+		}
+	}
+	
+	/**
+	 * Stops deleting files, unless {@link #finish()} has been called before.
+	 */
+	@Override
+	public void close() {
+		pWorkers.close();
+	}
+	
+}
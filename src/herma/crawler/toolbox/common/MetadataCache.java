@@ -0,0 +1,358 @@
+/* This Source Code Form is subject to the terms of the hermA Licence.
+ * If a copy of the licence was not distributed with this file, You have
+ * received this Source Code Form in a manner that does not comply with
+ * the terms of the licence.
+ */
+package herma.crawler.toolbox.common;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * Stores a {@link CrawlIndex} of the metadata files of a web crawler
+ * output directory in the binary file {@link CommonPaths#METADATA_CACHE_FILE}
+ * next to them, so that the metadata files need not be parsed again
+ * by the next tool working on the same output directory.
+ * <p>
+ * The cache contains the {@link StringPool}s of the index including
+ * their hash tables and the lines of the metadata files as IDs;
+ * it is memory-mapped and copied into the arrays of the index without
+ * decoding or hashing any strings. It records the size and the time
+ * of last modification of each metadata file and is ignored if any
+ * of them have changed since. Tools which delete from the metadata files
+ * delete the same lines from their index and save it again afterwards.
+ * </p>
+ * <p>
+ * Since deleted lines are deleted from the index but their filenames
+ * are not deleted from its {@link StringPool}, a cache which has been
+ * updated many times may contain many filenames which are no longer
+ * referenced by the metadata files. These are dropped when the
+ * metadata files are parsed again, for example after they have been
+ * changed by another program.
+ * </p>
+ */
+public class MetadataCache {
+	
+	// "hermAIDX"
+	private static final long MAGIC = 0x6865726D41494458L;
+	private static final int VERSION = 2;
+	
+	private static final int BUFFER_SIZE = 1 << 20;
+	// the largest part of the cache which is mapped at once
+	private static final int MAX_WINDOW = 1 << 30;
+	
+	private static final String[] SOURCE_FILES = { CommonPaths.URLS_FILE, CommonPaths.FILES_FILE, CommonPaths.MATCHES_FILE };
+	
+	private MetadataCache() {
+	}
+	
+	/**
+	 * Loads the {@link CrawlIndex} of all metadata files
+	 * ({@link CommonPaths#URLS_FILE}, {@link CommonPaths#FILES_FILE}
+	 * and {@link CommonPaths#MATCHES_FILE}) of a web crawler
+	 * output directory.
+	 * <p>
+	 * The index is loaded from the {@link CommonPaths#METADATA_CACHE_FILE}
+	 * if it is up to date. Otherwise, the metadata files are parsed
+	 * and the cache is written; if the cache cannot be written
+	 * (because the output directory is not writable, for example),
+	 * the index is returned all the same.
+	 * </p>
+	 * 
+	 * @param crawlDir
+	 * (a {@link Path} locating) the output directory;
+	 * not {@code null}
+	 * 
+	 * @return
+	 * the {@link CrawlIndex};
+	 * not {@code null}
+	 * 
+	 * @throws IOException
+	 * if an I/O error occurs while reading a metadata file
+	 */
+	public static CrawlIndex load(final Path crawlDir) throws IOException {
+		final long[] stamps = stampSources(crawlDir);
+		final Path cacheFile = crawlDir.resolve(CommonPaths.METADATA_CACHE_FILE);
+		if (Files.isRegularFile(cacheFile)) {
+			try {
+				final CrawlIndex index = read(cacheFile, stamps);
+				if (index != null)
+					return index;
+			} catch (final IOException | RuntimeException e) {
+				// a damaged cache is replaced like an outdated one
+			}
+		}
+		
+		final CrawlIndex index = new CrawlIndex();
+		index.loadUrls(crawlDir.resolve(CommonPaths.URLS_FILE));
+		index.loadFiles(crawlDir.resolve(CommonPaths.FILES_FILE));
+		index.loadMatches(crawlDir.resolve(CommonPaths.MATCHES_FILE));
+		try {
+			// the stamps from before parsing, so that changes made in the meantime are detected
+			write(crawlDir, index, stamps);
+		} catch (final IOException e) {
+			// the cache is only an optimization
+		}
+		return index;
+	}
+	
+	/**
+	 * Saves a {@link CrawlIndex} of all metadata files
+	 * of a web crawler output directory as its
+	 * {@link CommonPaths#METADATA_CACHE_FILE},
+	 * replacing the cache (in a single rename).
+	 * <p>
+	 * The index must match the current content of the metadata files;
+	 * this method is called after deleting the same lines from the
+	 * metadata files and from the index.
+	 * </p>
+	 * <p>
+	 * Since the cache is only an optimization, an I/O error does not
+	 * stop the caller: the outdated cache is deleted (so that the
+	 * metadata files are parsed again by the next tool) and a warning
+	 * is printed on {@link System#err}.
+	 * </p>
+	 * 
+	 * @param crawlDir
+	 * (a {@link Path} locating) the output directory;
+	 * not {@code null}
+	 * 
+	 * @param index
+	 * the {@link CrawlIndex}, which has been returned by {@link #load(Path)};
+	 * not {@code null}
+	 */
+	public static void save(final Path crawlDir, final CrawlIndex index) {
+		try {
+			write(crawlDir, index, stampSources(crawlDir));
+		} catch (final IOException e) {
+			System.err.print("Warning: could not update " + CommonPaths.METADATA_CACHE_FILE + " (");
+			System.err.print(e);
+			System.err.println(')');
+			try {
+				Files.deleteIfExists(crawlDir.resolve(CommonPaths.METADATA_CACHE_FILE));
+			} catch (final IOException e2) {
+				// the stamps of the changed metadata files do not match the outdated cache anyway
+			}
+		}
+	}
+	
+	// size and time of last modification of each source file
+	private static long[] stampSources(final Path crawlDir) throws IOException {
+		final long[] result = new long[2 * SOURCE_FILES.length];
+		for (int i = 0; i < SOURCE_FILES.length; i++) {
+			final BasicFileAttributes attributes = Files.readAttributes(crawlDir.resolve(SOURCE_FILES[i]), BasicFileAttributes.class);
+			result[2 * i] = attributes.size();
+			result[2 * i + 1] = attributes.lastModifiedTime().toMillis();
+		}
+		return result;
+	}
+	
+	// returns null if the cache is outdated
+	private static CrawlIndex read(final Path cacheFile, final long[] stamps) throws IOException {
+		try (final Reader in = new Reader(cacheFile)) {
+			if (in.readLong() != MAGIC || in.readInt() != VERSION)
+				return null;
+			for (final long stamp : stamps)
+				if (in.readLong() != stamp)
+					return null;
+			return CrawlIndex.read(in);
+		}
+	}
+	
+	private static void write(final Path crawlDir, final CrawlIndex index, final long[] stamps) throws IOException {
+		final Path cacheFile = crawlDir.resolve(CommonPaths.METADATA_CACHE_FILE);
+		final Path tempFile = Files.createTempFile(crawlDir, CommonPaths.METADATA_CACHE_FILE, "");
+		try {
+			Common.copyPermissions(crawlDir.resolve(CommonPaths.URLS_FILE), tempFile);
+			try (final Writer out = new Writer(tempFile)) {
+				out.writeLong(MAGIC);
+				out.writeInt(VERSION);
+				for (final long stamp : stamps)
+					out.writeLong(stamp);
+				index.write(out);
+			}
+			Files.move(tempFile, cacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(tempFile);
+		}
+	}
+	
+	/**
+	 * Writes the binary cache file.
+	 */
+	static class Writer implements AutoCloseable {
+		
+		private final FileChannel pChannel;
+		private final ByteBuffer pBuffer;
+		
+		private Writer(final Path file) throws IOException {
+			pChannel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+			pBuffer = ByteBuffer.allocate(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		}
+		
+		void writeInt(final int value) throws IOException {
+			if (pBuffer.remaining() < Integer.BYTES)
+				flush();
+			pBuffer.putInt(value);
+		}
+		
+		void writeLong(final long value) throws IOException {
+			if (pBuffer.remaining() < Long.BYTES)
+				flush();
+			pBuffer.putLong(value);
+		}
+		
+		void writeInts(final int[] values, final int length) throws IOException {
+			int offset = 0;
+			while (offset < length) {
+				if (pBuffer.remaining() < Integer.BYTES)
+					flush();
+				final int count = Math.min(length - offset, pBuffer.remaining() / Integer.BYTES);
+				pBuffer.asIntBuffer().put(values, offset, count);
+				pBuffer.position(pBuffer.position() + count * Integer.BYTES);
+				offset += count;
+			}
+		}
+		
+		void writeLongs(final long[] values, final int length) throws IOException {
+			int offset = 0;
+			while (offset < length) {
+				if (pBuffer.remaining() < Long.BYTES)
+					flush();
+				final int count = Math.min(length - offset, pBuffer.remaining() / Long.BYTES);
+				pBuffer.asLongBuffer().put(values, offset, count);
+				pBuffer.position(pBuffer.position() + count * Long.BYTES);
+				offset += count;
+			}
+		}
+		
+		void writeBytes(final byte[] values, final int length) throws IOException {
+			int offset = 0;
+			while (offset < length) {
+				if (!pBuffer.hasRemaining())
+					flush();
+				final int count = Math.min(length - offset, pBuffer.remaining());
+				pBuffer.put(values, offset, count);
+				offset += count;
+			}
+		}
+		
+		private void flush() throws IOException {
+			pBuffer.flip();
+			while (pBuffer.hasRemaining())
+				pChannel.write(pBuffer);
+			pBuffer.clear();
+		}
+		
+		@Override
+		public void close() throws IOException {
+			try {
+				flush();
+				pChannel.force(false);
+			} finally {
+				pChannel.close();
+			}
+		}
+		
+	}
+	
+	/**
+	 * Reads the binary cache file through a memory-mapped window,
+	 * which is moved when it has been read.
+	 */
+	static class Reader implements AutoCloseable {
+		
+		private final FileChannel pChannel;
+		private final long pSize;
+		// the position of pWindow in the file
+		private long pWindowStart;
+		private MappedByteBuffer pWindow;
+		
+		private Reader(final Path file) throws IOException {
+			pChannel = FileChannel.open(file, StandardOpenOption.READ);
+			pSize = pChannel.size();
+			pWindowStart = 0L;
+			pWindow = map(0L);
+		}
+		
+		private MappedByteBuffer map(final long start) throws IOException {
+			final MappedByteBuffer window = pChannel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(MAX_WINDOW, pSize - start));
+			window.order(ByteOrder.LITTLE_ENDIAN);
+			return window;
+		}
+		
+		// makes at least the given number of bytes available in the window
+		private void require(final int bytes) throws IOException {
+			if (pWindow.remaining() >= bytes)
+				return;
+			final long position = pWindowStart + pWindow.position();
+			if (pSize - position < bytes)
+				throw new IOException("Truncated " + CommonPaths.METADATA_CACHE_FILE);
+			pWindowStart = position;
+			pWindow = map(position);
+		}
+		
+		int readInt() throws IOException {
+			require(Integer.BYTES);
+			return pWindow.getInt();
+		}
+		
+		long readLong() throws IOException {
+			require(Long.BYTES);
+			return pWindow.getLong();
+		}
+		
+		int[] readInts(final int length, final int capacity) throws IOException {
+			final int[] result = new int[Math.max(length, capacity)];
+			int offset = 0;
+			while (offset < length) {
+				require(Integer.BYTES);
+				final int count = Math.min(length - offset, pWindow.remaining() / Integer.BYTES);
+				pWindow.asIntBuffer().get(result, offset, count);
+				pWindow.position(pWindow.position() + count * Integer.BYTES);
+				offset += count;
+			}
+			return result;
+		}
+		
+		long[] readLongs(final int length, final int capacity) throws IOException {
+			final long[] result = new long[Math.max(length, capacity)];
+			int offset = 0;
+			while (offset < length) {
+				require(Long.BYTES);
+				final int count = Math.min(length - offset, pWindow.remaining() / Long.BYTES);
+				pWindow.asLongBuffer().get(result, offset, count);
+				pWindow.position(pWindow.position() + count * Long.BYTES);
+				offset += count;
+			}
+			return result;
+		}
+		
+		byte[] readBytes(final int length, final int capacity) throws IOException {
+			final byte[] result = new byte[Math.max(length, capacity)];
+			int offset = 0;
+			while (offset < length) {
+				require(1);
+				final int count = Math.min(length - offset, pWindow.remaining());
+				pWindow.get(result, offset, count);
+				offset += count;
+			}
+			return result;
+		}
+		
+		@Override
+		public void close() throws IOException {
+			pChannel.close();
+		}
+		
+	}
+	
+}
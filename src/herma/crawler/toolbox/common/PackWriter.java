@@ -0,0 +1,161 @@
+/* This Source Code Form is subject to the terms of the hermA Licence.
+ * If a copy of the licence was not distributed with this file, You have
+ * received this Source Code Form in a manner that does not comply with
+ * the terms of the licence.
+ */
+package herma.crawler.toolbox.common;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Writes the pack file of a packed directory
+ * (see {@link PackedDirectories}).
+ * <p>
+ * The files are appended to the pack file one after the other,
+ * uncompressed; the index is written when the {@link PackWriter}
+ * is closed. Until then, the pack file cannot be read.
+ * </p>
+ * <p>
+ * Every file is read twice with a fixed buffer, however large it is:
+ * once to compute its checksum and size, which precede the content
+ * of an uncompressed entry, and once to copy it into the pack file.
+ * </p>
+ * <p>
+ * The methods of this class may be called by several threads.
+ * </p>
+ */
+public class PackWriter implements AutoCloseable {
+	
+	// the end of central directory record of a ZIP file without entries
+	private static final byte[] EMPTY_PACK = { 0x50, 0x4B, 0x05, 0x06, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0 };
+	
+	private static final int BUFFER_SIZE = 1 << 16;
+	
+	private final Path pFile;
+	private final OutputStream pOut;
+	private final ZipOutputStream pZipOut;
+	private long pEntries;
+	
+	/**
+	 * Creates a {@link PackWriter} writing a new pack file,
+	 * replacing an existing pack file.
+	 * 
+	 * @param directory
+	 * (a {@link Path} locating) the directory to be packed,
+	 * which must not exist;
+	 * not {@code null}
+	 * 
+	 * @throws IOException
+	 * if an I/O error occurs
+	 */
+	public PackWriter(final Path directory) throws IOException {
+		pFile = PackedDirectories.packFileOf(directory);
+		pOut = new BufferedOutputStream(Files.newOutputStream(pFile, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE), 1 << 20);
+		pZipOut = new ZipOutputStream(pOut);
+		pEntries = 0L;
+	}
+	
+	/**
+	 * Returns the pack file.
+	 * 
+	 * @return
+	 * (a {@link Path} locating) the pack file;
+	 * not {@code null}
+	 */
+	public Path getFile() {
+		return pFile;
+	}
+	
+	/**
+	 * Appends a file.
+	 * 
+	 * @param filename
+	 * the name of the file in the packed directory,
+	 * which must not have been added before;
+	 * not {@code null}
+	 * 
+	 * @param source
+	 * (a {@link Path} locating) the file to copy,
+	 * which must not change while it is added;
+	 * not {@code null}
+	 * 
+	 * @param lastModified
+	 * the time of the last modification of the file;
+	 * not {@code null}
+	 * 
+	 * @return
+	 * the size of the file in bytes
+	 * 
+	 * @throws IOException
+	 * if an I/O error occurs,
+	 * or if a file of the same name has been added before
+	 */
+	public long add(final String filename, final Path source, final FileTime lastModified) throws IOException {
+		final byte[] buffer = new byte[BUFFER_SIZE];
+		// without holding the lock, so that several threads can read their files at the same time
+		final CRC32 crc = new CRC32();
+		long size = 0L;
+		try (final InputStream in = Files.newInputStream(source)) {
+			while (true) {
+				final int count = in.read(buffer);
+				if (count < 0)
+					break;
+				crc.update(buffer, 0, count);
+				size += count;
+			}
+		}
+		
+		final ZipEntry entry = new ZipEntry(filename);
+		// stored entries can be read without inflating, and their sizes are known in advance
+		entry.setMethod(ZipEntry.STORED);
+		entry.setSize(size);
+		entry.setCompressedSize(size);
+		entry.setCrc(crc.getValue());
+		entry.setLastModifiedTime(lastModified);
+		synchronized (this) {
+			pZipOut.putNextEntry(entry);
+			try (final InputStream in = Files.newInputStream(source)) {
+				while (true) {
+					final int count = in.read(buffer);
+					if (count < 0)
+						break;
+					pZipOut.write(buffer, 0, count);
+				}
+			}
+			pZipOut.closeEntry();
+			pEntries++;
+		}
+		return size;
+	}
+	
+	/**
+	 * Writes the index and closes the pack file.
+	 * 
+	 * @throws IOException
+	 * if an I/O error occurs
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		if (pEntries > 0L) {
+			pZipOut.close();
+			return;
+		}
+		// a ZipOutputStream refuses to write a ZIP file without entries
+		try {
+			pOut.write(EMPTY_PACK);
+		} finally {
+			pOut.close();
+		}
+	}
+	
+}
@@ -0,0 +1,167 @@
+/* This Source Code Form is subject to the terms of the hermA Licence.
+ * If a copy of the licence was not distributed with this file, You have
+ * received this Source Code Form in a manner that does not comply with
+ * the terms of the licence.
+ */
+package herma.crawler.toolbox.common;
+
+import java.io.IOException;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+
+/**
+ * Opens directories of the web crawler output (such as
+ * {@link CommonPaths#ORIGINAL_DIR} or the sub-directories of
+ * {@link CommonPaths#TEXT_DIR}) which may be <em>packed</em>.
+ * <p>
+ * A packed directory is a single pack file next to the place of the
+ * directory, named like the directory with the suffix
+ * {@value #PACK_FILE_SUFFIX} (see {@link PackWriter}). Instead of
+ * millions of small files, it holds their contents one after the other,
+ * followed by an index of their names, offsets and lengths. Technically,
+ * a pack file is a ZIP file with uncompressed entries, so it can be read
+ * by the {@link FileSystem} for ZIP files of the Java platform, and the
+ * tools can work with the files in it through {@link Path}s as usual:
+ * listing the directory reads the index, and reading a file is a single
+ * sequential read of the pack file.
+ * </p>
+ * <p>
+ * Files in a packed directory can also be deleted; the pack file is
+ * then rewritten without them when this object is closed.
+ * </p>
+ * <p>
+ * This class is not thread-safe, but the {@link Path}s it returns
+ * may be used by several threads.
+ * </p>
+ */
+public class PackedDirectories implements AutoCloseable {
+	
+	/**
+	 * The suffix of the name of a pack file:
+	 * {@value #PACK_FILE_SUFFIX}
+	 */
+	public static final String PACK_FILE_SUFFIX = ".zip";
+	
+	private final HashMap<Path, Path> pDirectories;
+	private final HashMap<Path, FileSystem> pPacks;
+	
+	/**
+	 * Creates a {@link PackedDirectories} object
+	 * which has not opened any pack files yet.
+	 */
+	public PackedDirectories() {
+		pDirectories = new HashMap<>();
+		pPacks = new HashMap<>();
+	}
+	
+	/**
+	 * Returns the pack file of a directory.
+	 * 
+	 * @param directory
+	 * (a {@link Path} locating) the directory;
+	 * not {@code null}
+	 * 
+	 * @return
+	 * (a {@link Path} locating) the pack file,
+	 * which need not exist;
+	 * not {@code null}
+	 */
+	public static Path packFileOf(final Path directory) {
+		return directory.resolveSibling(directory.getFileName().toString() + PACK_FILE_SUFFIX);
+	}
+	
+	/**
+	 * Determines whether a directory is packed,
+	 * that is, whether there is no such directory,
+	 * but a pack file.
+	 * 
+	 * @param directory
+	 * (a {@link Path} locating) the directory;
+	 * not {@code null}
+	 * 
+	 * @return
+	 * {@code true} if the directory is packed,
+	 * {@code false} otherwise
+	 */
+	public static boolean isPacked(final Path directory) {
+		return !Files.exists(directory) && Files.isRegularFile(packFileOf(directory));
+	}
+	
+	/**
+	 * Opens a directory which may be packed.
+	 * 
+	 * @param directory
+	 * (a {@link Path} locating) the directory;
+	 * not {@code null}
+	 * 
+	 * @return
+	 * the directory itself if it is not packed,
+	 * the root directory of its pack file otherwise;
+	 * not {@code null}
+	 * 
+	 * @throws IOException
+	 * if an I/O error occurs
+	 */
+	public Path open(final Path directory) throws IOException {
+		Path result = pDirectories.get(directory);
+		if (result != null)
+			return result;
+		if (isPacked(directory)) {
+			final Path packFile = packFileOf(directory);
+			final FileSystem pack = FileSystems.newFileSystem(packFile, (ClassLoader) null);
+			pPacks.put(packFile, pack);
+			result = pack.getRootDirectories().iterator().next();
+		} else {
+			result = directory;
+		}
+		pDirectories.put(directory, result);
+		return result;
+	}
+	
+	/**
+	 * Locates a file which may be in a packed directory.
+	 * 
+	 * @param file
+	 * (a {@link Path} locating) the file as if its directory was not packed;
+	 * not {@code null}
+	 * 
+	 * @return
+	 * (a {@link Path} locating) the file in its directory as returned by
+	 * {@link #open(Path)};
+	 * not {@code null}
+	 * 
+	 * @throws IOException
+	 * if an I/O error occurs
+	 */
+	public Path locate(final Path file) throws IOException {
+		return open(file.getParent()).resolve(file.getFileName().toString());
+	}
+	
+	/**
+	 * Closes the pack files opened so far,
+	 * rewriting those in which files have been deleted.
+	 * 
+	 * @throws IOException
+	 * if an I/O error occurs
+	 */
+	@Override
+	public void close() throws IOException {
+		IOException exception = null;
+		for (final FileSystem pack : pPacks.values()) {
+			try {
+				pack.close();
+			} catch (final IOException e) {
+				if (exception == null)
+					exception = e;
+			}
+		}
+		pPacks.clear();
+		pDirectories.clear();
+		if (exception != null)
+			throw exception;
+	}
+	
+}
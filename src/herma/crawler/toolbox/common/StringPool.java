@@ -0,0 +1,305 @@
+/* This Source Code Form is subject to the terms of the hermA Licence.
+ * If a copy of the licence was not distributed with this file, You have
+ * received this Source Code Form in a manner that does not comply with
+ * the terms of the licence.
+ */
+package herma.crawler.toolbox.common;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A set of distinct strings identified by consecutive {@code int} IDs
+ * (starting with 0 in the order of addition).
+ * <p>
+ * The strings are not kept as {@link String} objects, but encoded in
+ * UTF-8 in byte arrays (pages) of {@value #PAGE_SIZE} bytes, and the
+ * hash table is an array of IDs. A pool of many short strings (such
+ * as the URLs and filenames in the metadata files of large crawls)
+ * therefore needs only a small fraction of the memory of a
+ * {@code HashMap<String, Integer>}. The total length of the encoded
+ * strings is only limited by the available memory, but every single
+ * string must fit into a page.
+ * </p>
+ * <p>
+ * This class is not thread-safe.
+ * </p>
+ */
+public class StringPool {
+	
+	private static final int PAGE_BITS = 24;
+	
+	/**
+	 * The size of a page in bytes, which is the maximum length
+	 * of a string in UTF-8:
+	 * {@value #PAGE_SIZE}
+	 */
+	public static final int PAGE_SIZE = 1 << PAGE_BITS;
+	
+	// some virtual machines cannot allocate arrays up to Integer.MAX_VALUE
+	private static final int MAX_ARRAY_LENGTH = Integer.MAX_VALUE - 8;
+	
+	private byte[][] pPages;
+	// the position after the last string (page index * PAGE_SIZE + index in the page)
+	private long pByteCount;
+	
+	/*
+	 * string i ends before position pOffsets[i + 1] and starts at position pOffsets[i],
+	 * unless it did not fit into the rest of that page: then it starts at the beginning
+	 * of the next page (see start(int))
+	 */
+	private long[] pOffsets;
+	private int[] pHashes;
+	private int pSize;
+	
+	// open addressing: ID + 1, or 0 for an empty slot
+	private int[] pTable;
+	
+	/**
+	 * Creates an empty {@link StringPool}.
+	 */
+	public StringPool() {
+		pPages = new byte[][] { new byte[1024] };
+		pByteCount = 0L;
+		pOffsets = new long[65];
+		pHashes = new int[64];
+		pSize = 0;
+		pTable = new int[128];
+	}
+	
+	/**
+	 * Returns the number of strings in the pool.
+	 * 
+	 * @return
+	 * the number of strings;
+	 * the IDs are 0 to this number minus 1
+	 */
+	public int size() {
+		return pSize;
+	}
+	
+	/**
+	 * Adds a string to the pool unless it is there already.
+	 * 
+	 * @param str
+	 * the string;
+	 * not {@code null}
+	 * 
+	 * @return
+	 * the ID of the string
+	 */
+	public int intern(final String str) {
+		final byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+		final int hash = hash(bytes, 0, bytes.length);
+		int slot = hash & (pTable.length - 1);
+		while (pTable[slot] != 0) {
+			final int id = pTable[slot] - 1;
+			if (pHashes[id] == hash && matches(id, bytes, 0, bytes.length))
+				return id;
+			slot = (slot + 1) & (pTable.length - 1);
+		}
+		
+		final int id = add(bytes, hash);
+		pTable[slot] = id + 1;
+		// at most half of the slots are used
+		if (2 * pSize > pTable.length)
+			rehash();
+		return id;
+	}
+	
+	/**
+	 * Looks up a string.
+	 * 
+	 * @param str
+	 * the string;
+	 * not {@code null}
+	 * 
+	 * @return
+	 * the ID of the string,
+	 * or -1 if it is not in the pool
+	 */
+	public int find(final String str) {
+		final byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+		return find(bytes, 0, bytes.length);
+	}
+	
+	/**
+	 * Looks up a string given by its UTF-8 encoding
+	 * in a part of a byte array, without decoding it.
+	 * 
+	 * @param bytes
+	 * the byte array;
+	 * not {@code null}
+	 * 
+	 * @param offset
+	 * the index of the first byte of the string in the array
+	 * 
+	 * @param length
+	 * the number of bytes of the string
+	 * 
+	 * @return
+	 * the ID of the string,
+	 * or -1 if it is not in the pool
+	 */
+	public int find(final byte[] bytes, final int offset, final int length) {
+		final int hash = hash(bytes, offset, length);
+		int slot = hash & (pTable.length - 1);
+		while (pTable[slot] != 0) {
+			final int id = pTable[slot] - 1;
+			if (pHashes[id] == hash && matches(id, bytes, offset, length))
+				return id;
+			slot = (slot + 1) & (pTable.length - 1);
+		}
+		return -1;
+	}
+	
+	/**
+	 * Returns a string from the pool.
+	 * 
+	 * @param id
+	 * the ID of the string
+	 * 
+	 * @return
+	 * the string;
+	 * not {@code null}
+	 */
+	public String get(final int id) {
+		final long start = start(id);
+		return new String(pPages[(int) (start >>> PAGE_BITS)], (int) (start & (PAGE_SIZE - 1)), (int) (pOffsets[id + 1] - start), StandardCharsets.UTF_8);
+	}
+	
+	private long start(final int id) {
+		final long start = pOffsets[id];
+		final long end = pOffsets[id + 1];
+		if (end == start)
+			return start;
+		// the start of the page of the last byte, if the string has been moved there
+		return Math.max(start, (end - 1) & ~(long) (PAGE_SIZE - 1));
+	}
+	
+	private int add(final byte[] bytes, final int hash) {
+		if (bytes.length > PAGE_SIZE)
+			throw new IllegalArgumentException("string too long for a string pool (" + bytes.length + " bytes in UTF-8, at most " + PAGE_SIZE + ')');
+		long start = pByteCount;
+		int offset = (int) (start & (PAGE_SIZE - 1));
+		if (offset + bytes.length > PAGE_SIZE) {
+			// strings do not span pages
+			start += PAGE_SIZE - offset;
+			offset = 0;
+		}
+		final byte[] page = providePage((int) (start >>> PAGE_BITS), offset + bytes.length);
+		System.arraycopy(bytes, 0, page, offset, bytes.length);
+		pByteCount = start + bytes.length;
+		
+		if (pSize == pHashes.length) {
+			pHashes = Arrays.copyOf(pHashes, grow(pHashes.length, pSize + 1));
+			pOffsets = Arrays.copyOf(pOffsets, pHashes.length + 1);
+		}
+		final int id = pSize++;
+		pHashes[id] = hash;
+		pOffsets[id + 1] = pByteCount;
+		return id;
+	}
+	
+	// the page with at least the given capacity
+	private byte[] providePage(final int index, final int capacity) {
+		if (index == pPages.length)
+			pPages = Arrays.copyOf(pPages, grow(pPages.length, index + 1L));
+		final byte[] page = pPages[index];
+		if (page == null) {
+			// a pool with more than one page is large
+			pPages[index] = new byte[PAGE_SIZE];
+			return pPages[index];
+		}
+		if (capacity > page.length)
+			pPages[index] = Arrays.copyOf(page, (int) Math.min(Math.max(2L * page.length, capacity), PAGE_SIZE));
+		return pPages[index];
+	}
+	
+	private static int grow(final int capacity, final long minCapacity) {
+		if (minCapacity > MAX_ARRAY_LENGTH)
+			throw new IllegalStateException("string pool too large");
+		final long result = Math.max(2L * capacity, minCapacity);
+		return (int) Math.min(result, MAX_ARRAY_LENGTH);
+	}
+	
+	private void rehash() {
+		final int[] table = new int[2 * pTable.length];
+		for (int id = 0; id < pSize; id++) {
+			int slot = pHashes[id] & (table.length - 1);
+			while (table[slot] != 0)
+				slot = (slot + 1) & (table.length - 1);
+			table[slot] = id + 1;
+		}
+		pTable = table;
+	}
+	
+	// the hash table is written as it is, so that reading needs no hashing
+	void write(final MetadataCache.Writer out) throws IOException {
+		out.writeInt(pSize);
+		out.writeLong(pByteCount);
+		out.writeInt(pTable.length);
+		final int pageCount = pageCount(pByteCount);
+		for (int i = 0; i < pageCount; i++) {
+			final int length = (i == pageCount - 1) ? (int) (pByteCount - ((long) i << PAGE_BITS)) : pPages[i].length;
+			out.writeInt(length);
+			out.writeBytes(pPages[i], length);
+		}
+		out.writeLongs(pOffsets, pSize + 1);
+		out.writeInts(pHashes, pSize);
+		out.writeInts(pTable, pTable.length);
+	}
+	
+	static StringPool read(final MetadataCache.Reader in) throws IOException {
+		final int size = in.readInt();
+		final long byteCount = in.readLong();
+		final int tableLength = in.readInt();
+		if (size < 0 || byteCount < 0L || Integer.bitCount(tableLength) != 1 || 2L * size > tableLength)
+			throw new IOException("Invalid string pool in " + CommonPaths.METADATA_CACHE_FILE);
+		
+		final StringPool result = new StringPool();
+		final int pageCount = pageCount(byteCount);
+		result.pPages = new byte[Math.max(pageCount, 1)][];
+		for (int i = 0; i < pageCount; i++) {
+			final int length = in.readInt();
+			if (length < 0 || length > PAGE_SIZE)
+				throw new IOException("Invalid string pool in " + CommonPaths.METADATA_CACHE_FILE);
+			result.pPages[i] = in.readBytes(length, (i == 0) ? 1024 : length);
+		}
+		if (pageCount == 0)
+			result.pPages[0] = new byte[1024];
+		result.pByteCount = byteCount;
+		result.pOffsets = in.readLongs(size + 1, 65);
+		result.pHashes = in.readInts(size, result.pOffsets.length - 1);
+		result.pSize = size;
+		result.pTable = in.readInts(tableLength, tableLength);
+		return result;
+	}
+	
+	// the number of pages holding strings
+	private static int pageCount(final long byteCount) {
+		return (byteCount == 0L) ? 0 : (int) ((byteCount - 1L) >>> PAGE_BITS) + 1;
+	}
+	
+	private boolean matches(final int id, final byte[] bytes, final int offset, final int length) {
+		final long start = start(id);
+		if (pOffsets[id + 1] - start != length)
+			return false;
+		final byte[] page = pPages[(int) (start >>> PAGE_BITS)];
+		final int pageOffset = (int) (start & (PAGE_SIZE - 1));
+		for (int i = 0; i < length; i++)
+			if (page[pageOffset + i] != bytes[offset + i])
+				return false;
+		return true;
+	}
+	
+	private static int hash(final byte[] bytes, final int offset, final int length) {
+		int hash = 0x811C9DC5;
+		for (int i = offset; i < offset + length; i++)
+			hash = (hash ^ bytes[i]) * 0x01000193;
+		// the table index is taken from the lower bits
+		return hash ^ (hash >>> 16);
+	}
+	
+}
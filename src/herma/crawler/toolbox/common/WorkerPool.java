@@ -0,0 +1,208 @@
+/* This Source Code Form is subject to the terms of the hermA Licence.
+ * If a copy of the licence was not distributed with this file, You have
+ * received this Source Code Form in a manner that does not comply with
+ * the terms of the licence.
+ */
+package herma.crawler.toolbox.common;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Executes I/O-bound tasks on a fixed number of worker threads,
+ * with a bounded number of tasks waiting for execution.
+ * <p>
+ * {@link #submit(Task)} blocks while the maximum number of tasks
+ * is waiting, so that a producer (such as a loop over the entries
+ * of a large directory) cannot run arbitrarily far ahead of the workers.
+ * With a single thread, tasks are executed directly by the thread
+ * calling {@link #submit(Task)}, so that the order of execution is
+ * the order of submission.
+ * </p>
+ * <p>
+ * Exceptions (and {@link Error}s) thrown by the tasks are collected
+ * and rethrown by {@link #finish()}; after the first exception,
+ * tasks that have not been started yet are skipped.
+ * </p>
+ */
+public class WorkerPool implements AutoCloseable {
+	
+	/**
+	 * A unit of work that may throw an {@link IOException}.
+	 */
+	@FunctionalInterface
+	public interface Task {
+		
+		/**
+		 * Performs the work.
+		 * 
+		 * @throws IOException
+		 * if an I/O error occurs
+		 */
+		void run() throws IOException;
+		
+	}
+	
+	private final ExecutorService pExecutor;
+	private final Semaphore pPermits;
+	private final int pQueueCapacity;
+	
+	private final Object pFailureLock;
+	private Throwable pFailure;
+	
+	/**
+	 * Creates a {@link WorkerPool}.
+	 * 
+	 * @param threads
+	 * the number of worker threads;
+	 * if less than 2, tasks are executed by the submitting thread
+	 * 
+	 * @param queueCapacity
+	 * the maximum number of tasks submitted, but not yet finished
+	 * (only relevant if there is more than one thread);
+	 * positive
+	 */
+	public WorkerPool(final int threads, final int queueCapacity) {
+		if (threads < 2) {
+			pExecutor = null;
+			pPermits = null;
+		} else {
+			pExecutor = Executors.newFixedThreadPool(threads);
+			pPermits = new Semaphore(queueCapacity);
+		}
+		pQueueCapacity = queueCapacity;
+		pFailureLock = new Object();
+		pFailure = null;
+	}
+	
+	/**
+	 * Submits a task for execution, blocking while the maximum number
+	 * of unfinished tasks has been reached.
+	 * 
+	 * @param task
+	 * the task;
+	 * not {@code null}
+	 * 
+	 * @throws IOException
+	 * if the pool has only one thread and the task
+	 * throws an {@link IOException}
+	 */
+	public void submit(final Task task) throws IOException {
+		if (pExecutor == null) {
+			task.run();
+			return;
+		}
+		pPermits.acquireUninterruptibly();
+		try {
+			pExecutor.execute(() -> runTask(task));
+		} catch (final RuntimeException e) {
+			pPermits.release();
+			throw e;
+		}
+	}
+	
+	private void runTask(final Task task) {
+		try {
+			if (!failed())
+				task.run();
+		} catch (final Throwable e) {
+			// including Errors, so that finish() does not return as if all tasks had completed
+			fail(e);
+		} finally {
+			pPermits.release();
+		}
+	}
+	
+	private boolean failed() {
+		synchronized (pFailureLock) {
+			return pFailure != null;
+		}
+	}
+	
+	private void fail(final Throwable e) {
+		synchronized (pFailureLock) {
+			if (pFailure == null)
+				pFailure = e;
+			else
+				pFailure.addSuppressed(e);
+		}
+	}
+	
+	/**
+	 * Determines whether a task has thrown an exception (or {@link Error}) so far.
+	 * 
+	 * @return
+	 * {@code true} if a task has failed,
+	 * {@code false} otherwise
+	 */
+	public boolean hasFailed() {
+		return failed();
+	}
+	
+	/**
+	 * Waits for all tasks submitted so far to finish, without stopping
+	 * the worker threads. Must be called by the thread submitting the tasks.
+	 * Exceptions thrown by the tasks are still rethrown by {@link #finish()} only.
+	 */
+	public void await() {
+		if (pExecutor == null)
+			return;
+		// every unfinished task holds a permit
+		pPermits.acquireUninterruptibly(pQueueCapacity);
+		pPermits.release(pQueueCapacity);
+	}
+	
+	/**
+	 * Waits for all submitted tasks to finish and stops the worker threads.
+	 * 
+	 * @throws IOException
+	 * if a task has thrown an {@link IOException}
+	 * (further exceptions are added as suppressed exceptions);
+	 * {@link RuntimeException}s and {@link Error}s thrown by a task
+	 * are rethrown as they are
+	 */
+	public void finish() throws IOException {
+		if (pExecutor == null)
+			return;
+		pExecutor.shutdown();
+		boolean interrupted = false;
+		while (true) {
+			try {
+				if (pExecutor.awaitTermination(1L, TimeUnit.MINUTES))
+					break;
+			} catch (final InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted)
+			Thread.currentThread().interrupt();
+		
+		final Throwable failure;
+		synchronized (pFailureLock) {
+			failure = pFailure;
+		}
+		if (failure instanceof IOException)
+			throw (IOException) failure;
+		if (failure instanceof UncheckedIOException)
+			throw ((UncheckedIOException) failure).getCause();
+		if (failure instanceof Error)
+			throw (Error) failure;
+		if (failure != null)
+			throw (RuntimeException) failure;
+	}
+	
+	/**
+	 * Stops the worker threads without waiting for submitted tasks
+	 * to finish, unless {@link #finish()} has been called before.
+	 */
+	@Override
+	public void close() {
+		if (pExecutor != null)
+			pExecutor.shutdownNow();
+	}
+	
+}